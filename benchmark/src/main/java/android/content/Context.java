@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM version of the Android Context for the benchmarks, only the calls 
+ * of the configuration store.
+ */
+public abstract class Context {
+
+	public static final int MODE_PRIVATE = 0;
+
+	public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+	public abstract File getFilesDir();
+
+	public Context getApplicationContext() {
+		return this;
+	}
+}
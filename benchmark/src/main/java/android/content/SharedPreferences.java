@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package android.content;
+
+/**
+ * JVM version of the Android SharedPreferences for the benchmarks, only the
+ * calls of the configuration store.
+ */
+public interface SharedPreferences {
+
+	public String getString(String key, String defValue);
+
+	public boolean contains(String key);
+
+	public Editor edit();
+
+	public interface Editor {
+
+		public Editor putString(String key, String value);
+
+		public Editor remove(String key);
+
+		public boolean commit();
+
+		public void apply();
+	}
+}
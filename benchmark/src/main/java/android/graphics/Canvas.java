@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+package android.graphics;
+
+/**
+ * JVM version of the Android canvas for the benchmarks and the tests, 
+ * it draws nothing.
+ */
+public class Canvas {
+
+	public int save() {
+		return 1;
+	}
+
+	public void restore() {}
+
+	public void translate(float dx, float dy) {}
+
+	public void drawRect(Rect rect, Paint paint) {}
+
+	public void drawRect(RectF rect, Paint paint) {}
+
+	public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {}
+
+	public void drawCircle(float cx, float cy, float radius, Paint paint) {}
+
+	public void drawLines(float[] pts, Paint paint) {}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+package android.graphics;
+
+/**
+ * JVM version of the Android colors for the benchmarks and the tests.
+ */
+public class Color {
+
+	public static final int TRANSPARENT = 0;
+
+	/**
+	 * @param colorString The color as <code>#RRGGBB</code> or <code>#AARRGGBB</code>.
+	 * @return The color.
+	 */
+	public static int parseColor(String colorString) {
+		long color = Long.parseLong(colorString.substring(1), 16);
+		if ( colorString.length() == 7 )
+			color |= 0xFF000000L;
+		return (int) color;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+package android.graphics;
+
+/**
+ * JVM version of the Android paint for the benchmarks and the tests, it only
+ * keeps the values.
+ */
+public class Paint {
+
+	public static final int ANTI_ALIAS_FLAG = 1;
+
+	public enum Style {
+		FILL, STROKE, FILL_AND_STROKE
+	}
+
+	private int		mFlags;
+	private int		mColor;
+	private Style	mStyle	= Style.FILL;
+	private float	mStrokeWidth;
+
+	public Paint() {}
+
+	public Paint(int flags) {
+		mFlags = flags;
+	}
+
+	public int getFlags() {
+		return mFlags;
+	}
+
+	public void setColor(int color) {
+		mColor = color;
+	}
+
+	public int getColor() {
+		return mColor;
+	}
+
+	public void setAlpha(int a) {
+		mColor = (mColor & 0x00FFFFFF) | (a << 24);
+	}
+
+	public int getAlpha() {
+		return mColor >>> 24;
+	}
+
+	public void setStyle(Style style) {
+		mStyle = style;
+	}
+
+	public Style getStyle() {
+		return mStyle;
+	}
+
+	public void setStrokeWidth(float width) {
+		mStrokeWidth = width;
+	}
+
+	public float getStrokeWidth() {
+		return mStrokeWidth;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+package android.graphics;
+
+/**
+ * JVM version of the Android integer rectangle for the benchmarks and the tests.
+ */
+public final class Rect {
+
+	public int left;
+	public int top;
+	public int right;
+	public int bottom;
+
+	public Rect() {}
+
+	public Rect(int left, int top, int right, int bottom) {
+		set(left, top, right, bottom);
+	}
+
+	public void set(int left, int top, int right, int bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+
+	public void set(Rect src) {
+		set(src.left, src.top, src.right, src.bottom);
+	}
+
+	public void setEmpty() {
+		set(0, 0, 0, 0);
+	}
+
+	public boolean isEmpty() {
+		return left >= right || top >= bottom;
+	}
+
+	public int width() {
+		return right - left;
+	}
+
+	public int height() {
+		return bottom - top;
+	}
+
+	public void offset(int dx, int dy) {
+		left += dx;
+		top += dy;
+		right += dx;
+		bottom += dy;
+	}
+
+	public void union(Rect r) {
+		if ( r.isEmpty() )
+			return;
+		if ( isEmpty() ) {
+			set(r);
+			return;
+		}
+		left = Math.min(left, r.left);
+		top = Math.min(top, r.top);
+		right = Math.max(right, r.right);
+		bottom = Math.max(bottom, r.bottom);
+	}
+}
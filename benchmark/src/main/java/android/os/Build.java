@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package android.os;
+
+/**
+ * JVM version of the Android build information for the benchmarks, 
+ * older than every version check of the library.
+ */
+public final class Build {
+
+	private Build() {}
+
+	public static final class VERSION {
+		public static final int SDK_INT = 0;
+	}
+
+	public static final class VERSION_CODES {
+		public static final int JELLY_BEAN = 16;
+		public static final int JELLY_BEAN_MR2 = 18;
+		public static final int N = 24;
+		public static final int Q = 29;
+	}
+}
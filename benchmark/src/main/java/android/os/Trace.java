@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package android.os;
+
+/**
+ * JVM version of the Android trace for the benchmarks, does nothing.
+ */
+public final class Trace {
+
+	private Trace() {}
+
+	public static void beginSection(String sectionName) {}
+
+	public static void endSection() {}
+
+	public static void beginAsyncSection(String methodName, int cookie) {}
+
+	public static void endAsyncSection(String methodName, int cookie) {}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package android.util;
+
+/**
+ * JVM version of the Android Base64 for the benchmarks.
+ */
+public class Base64 {
+
+	public static final int DEFAULT = 0;
+	public static final int NO_PADDING = 1;
+	public static final int NO_WRAP = 2;
+
+	private Base64() {}
+
+	public static String encodeToString(byte[] input, int flags) {
+		return new String(encoder(flags).encode(input));
+	}
+
+	public static byte[] decode(String str, int flags) {
+		return java.util.Base64.getMimeDecoder().decode(str);
+	}
+
+	public static byte[] decode(byte[] input, int flags) {
+		return java.util.Base64.getMimeDecoder().decode(input);
+	}
+
+	/* package */ static java.util.Base64.Encoder encoder(int flags) {
+		java.util.Base64.Encoder encoder = (flags & NO_WRAP) != 0 
+				? java.util.Base64.getEncoder() 
+				: java.util.Base64.getMimeEncoder(76, new byte[] { '\n' });
+		return (flags & NO_PADDING) != 0 ? encoder.withoutPadding() : encoder;
+	}
+}
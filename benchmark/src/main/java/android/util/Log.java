@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package android.util;
+
+/**
+ * JVM version of the Android log for the benchmarks, writes to stderr.
+ */
+public final class Log {
+
+	private Log() {}
+
+	public static int d(String tag, String msg) {
+		return println("D", tag, msg);
+	}
+
+	public static int i(String tag, String msg) {
+		return println("I", tag, msg);
+	}
+
+	public static int w(String tag, String msg) {
+		return println("W", tag, msg);
+	}
+
+	public static int w(String tag, String msg, Throwable tr) {
+		return println("W", tag, msg + '\n' + tr);
+	}
+
+	public static int e(String tag, String msg) {
+		return println("E", tag, msg);
+	}
+
+	public static int e(String tag, String msg, Throwable tr) {
+		return println("E", tag, msg + '\n' + tr);
+	}
+
+	private static int println(String priority, String tag, String msg) {
+		System.err.println(priority + "/" + tag + ": " + msg);
+		return msg.length();
+	}
+}
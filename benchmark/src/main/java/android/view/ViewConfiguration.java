@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package android.view;
+
+/**
+ * JVM version of the Android view configuration for the benchmarks, with the
+ * default timeouts of the framework.
+ */
+public class ViewConfiguration {
+
+	private ViewConfiguration() {}
+
+	public static int getLongPressTimeout() {
+		return 500;
+	}
+
+	public static int getDoubleTapTimeout() {
+		return 300;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Opens the package-private {@link Serializer} and {@link ConfigurationCodec} 
+ * to the benchmarks.
+ */
+public final class SerializerAccess {
+
+	private SerializerAccess() {}
+
+	public static Object fromString(String s) throws IOException, ClassNotFoundException {
+		return Serializer.fromString(s);
+	}
+
+	public static String toString(Serializable o) throws IOException {
+		return Serializer.toString(o);
+	}
+
+	public static List<AhudConfiguration> decode(byte[] bytes) throws IOException {
+		return ConfigurationCodec.decode(bytes);
+	}
+
+	public static byte[] encode(List<AhudConfiguration> configurations) throws IOException {
+		return ConfigurationCodec.encode(configurations);
+	}
+}
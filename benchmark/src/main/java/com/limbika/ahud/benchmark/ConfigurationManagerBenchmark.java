@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.limbika.ahud.AhudConfiguration;
+import com.limbika.ahud.AhudConfigurationManager;
+import com.limbika.ahud.AhudConfigurationManager.AhudConfigurationException;
+
+/**
+ * Lookups and replacements in the configuration store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationManagerBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int profiles;
+
+	private AhudConfigurationManager mManager;
+	private AhudConfiguration[] mConfigurations;
+	private int mNext;
+
+	@Setup
+	public void setup() throws AhudConfigurationException {
+		// Each parameter runs in its own fork, the singleton starts empty
+		mManager = AhudConfigurationManager.get(new MemoryContext());
+		mConfigurations = Profiles.create(profiles).toArray(new AhudConfiguration[profiles]);
+		for (AhudConfiguration conf : mConfigurations) {
+			mManager.addConfiguration(conf);
+		}
+	}
+
+	private AhudConfiguration next() {
+		// Walk the ids in a fixed stride so lookups hit the whole list
+		mNext = (mNext + 7919) % profiles;
+		return mConfigurations[mNext];
+	}
+
+	@Benchmark
+	public AhudConfiguration findConfById() {
+		return mManager.findConfById(next().getId());
+	}
+
+	/**
+	 * Replace a stored profile with the same id.
+	 */
+	@Benchmark
+	public AhudConfigurationManager addConfiguration() throws AhudConfigurationException {
+		mManager.addConfiguration(next());
+		return mManager;
+	}
+}
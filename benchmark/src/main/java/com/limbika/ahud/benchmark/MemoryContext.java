@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Context with the shared preferences in memory and the files in a
+ * temporary directory.
+ */
+public class MemoryContext extends Context {
+
+	private final Map<String, MemoryPreferences> mPreferences = new HashMap<String, MemoryPreferences>();
+	private File mFilesDir;
+
+	@Override
+	public synchronized File getFilesDir() {
+		if ( mFilesDir == null ) {
+			try {
+				mFilesDir = File.createTempFile("ahud", "");
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			mFilesDir.delete();
+			mFilesDir.mkdirs();
+			mFilesDir.deleteOnExit();
+		}
+		return mFilesDir;
+	}
+
+	@Override
+	public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+		MemoryPreferences prefs = mPreferences.get(name);
+		if ( prefs == null ) {
+			prefs = new MemoryPreferences();
+			mPreferences.put(name, prefs);
+		}
+		return prefs;
+	}
+
+	private static class MemoryPreferences implements SharedPreferences {
+
+		private final Map<String, String> mValues = new HashMap<String, String>();
+
+		@Override
+		public synchronized String getString(String key, String defValue) {
+			String value = mValues.get(key);
+			return value == null ? defValue : value;
+		}
+
+		@Override
+		public synchronized boolean contains(String key) {
+			return mValues.containsKey(key);
+		}
+
+		@Override
+		public Editor edit() {
+			return new MemoryEditor();
+		}
+
+		private class MemoryEditor implements Editor {
+
+			private final Map<String, String> mChanges = new HashMap<String, String>();
+
+			@Override
+			public Editor putString(String key, String value) {
+				mChanges.put(key, value);
+				return this;
+			}
+
+			@Override
+			public Editor remove(String key) {
+				mChanges.put(key, null);
+				return this;
+			}
+
+			@Override
+			public boolean commit() {
+				synchronized (MemoryPreferences.this) {
+					for (Map.Entry<String, String> change : mChanges.entrySet()) {
+						if ( change.getValue() == null )
+							mValues.remove(change.getKey());
+						else
+							mValues.put(change.getKey(), change.getValue());
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public void apply() {
+				commit();
+			}
+		}
+	}
+}
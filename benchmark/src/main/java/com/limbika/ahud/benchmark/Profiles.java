@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud.benchmark;
+
+import java.util.ArrayList;
+
+import com.limbika.ahud.AhudConfiguration;
+
+/**
+ * Profiles for the benchmarks.
+ */
+/* package */ class Profiles {
+
+	private Profiles() {}
+
+	/**
+	 * @param count The number of profiles.
+	 * @return The profiles with ids from 0 and varied values.
+	 */
+	static ArrayList<AhudConfiguration> create(int count) {
+		ArrayList<AhudConfiguration> out = new ArrayList<AhudConfiguration>(count);
+		for (int i=0;i<count;i++) {
+			AhudConfiguration conf = new AhudConfiguration();
+			conf.setId(i);
+			conf.setAxisWidth(8 + i % 32);
+			conf.setHorizontalSpeed(1 + i % 20);
+			conf.setVerticalSpeed(1 + (i / 20) % 20);
+			conf.setAxisInital(i % 2 == 0 ? AhudConfiguration.AXIS_HORIZONTAL : AhudConfiguration.AXIS_VERTICAL);
+			conf.setAxisRestater(i % 3 == 0);
+			out.add(conf);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.limbika.ahud.core.AxisScanner;
+import com.limbika.ahud.core.Clock;
+
+/**
+ * Stepping throughput of the scanning engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+
+	private static final int	WIDTH			= 1080;
+	private static final int	HEIGHT			= 1920;
+	private static final long	FRAME_NANOS		= 1000000000L / 120;
+
+	private FrameClock mClock;
+	private AxisScanner mScanner;
+
+	@Setup
+	public void setup() {
+		mClock = new FrameClock();
+		mScanner = new AxisScanner(mClock, AxisScanner.AXIS_HORIZONTAL, 10, 10);
+		mScanner.setFieldSize(WIDTH, HEIGHT);
+	}
+
+	/**
+	 * One fixed step, the frame mode.
+	 */
+	@Benchmark
+	public float step() {
+		mScanner.step(1F);
+		return mScanner.getHorizontalPosition();
+	}
+
+	/**
+	 * One frame of the frame clock at 120 Hz.
+	 */
+	@Benchmark
+	public float advance() {
+		mClock.mNanos += FRAME_NANOS;
+		mScanner.advance();
+		return mScanner.getHorizontalPosition();
+	}
+
+	/**
+	 * A whole selection: first axis, second axis, cross and reset.
+	 */
+	@Benchmark
+	public int cross() {
+		mScanner.click();
+		mScanner.step(1F);
+		mScanner.click();
+		mScanner.step(1F);
+		mScanner.click();
+		mScanner.reset();
+		return mScanner.getState();
+	}
+
+	/**
+	 * Clock moved by the benchmark.
+	 */
+	private static class FrameClock implements Clock {
+
+		long mNanos = 1;
+
+		@Override
+		public long nanoTime() {
+			return mNanos;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.limbika.ahud.AhudConfiguration;
+import com.limbika.ahud.SerializerAccess;
+
+/**
+ * Round-trips of the stored configuration list, in the serialized format of 
+ * the old versions and in the binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+	@Param({"1", "100", "10000"})
+	public int profiles;
+
+	private ArrayList<AhudConfiguration> mConfigurations;
+	private String mSerialized;
+	private byte[] mEncoded;
+
+	@Setup
+	public void setup() throws IOException {
+		mConfigurations = Profiles.create(profiles);
+		mSerialized = SerializerAccess.toString(mConfigurations);
+		mEncoded = SerializerAccess.encode(mConfigurations);
+		System.err.println(profiles + " profiles: " + mSerialized.length() + " B serialized, " 
+				+ mEncoded.length + " B binary");
+	}
+
+	@Benchmark
+	public String write() throws IOException {
+		return SerializerAccess.toString(mConfigurations);
+	}
+
+	@Benchmark
+	public Object read() throws IOException, ClassNotFoundException {
+		return SerializerAccess.fromString(mSerialized);
+	}
+
+	@Benchmark
+	public Object roundTrip() throws IOException, ClassNotFoundException {
+		return SerializerAccess.fromString(SerializerAccess.toString(mConfigurations));
+	}
+
+	@Benchmark
+	public byte[] writeBinary() throws IOException {
+		return SerializerAccess.encode(mConfigurations);
+	}
+
+	@Benchmark
+	public Object readBinary() throws IOException {
+		return SerializerAccess.decode(mEncoded);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * The configurations serialized by the versions before the motion, render, 
+ * input and gesture modes read with the default modes.
+ */
+public class AhudConfigurationTest {
+
+	/**
+	 * List of two configurations serialized by the first version: id 7 with 
+	 * horizontal speed 15, and id 8 with axis width 30.
+	 */
+	/* package */ static final String	FIRST_VERSION_PROFILES =
+			"rO0ABXNyABNqYXZhLnV0aWwuQXJyYXlMaXN0eIHSHZnHYZ0DAAFJAARzaXpleHAAAAACdwQAAAAC\n"
+			+ "c3IAImNvbS5saW1iaWthLmFodWQuQWh1ZENvbmZpZ3VyYXRpb27I3cqOYoTKaQIACEkADG1BeGlz\n"
+			+ "SW5pdGlhbFoADW1BeGlzUmVzdGF0ZXJJAAptQXhpc1dpZHRoSQAQbUhvcml6b250YWxTcGVlZEkA\n"
+			+ "EG1Ib3Jpem9udGFsU3RhcnRKAANtSWRJAA5tVmVydGljYWxTcGVlZEkADm1WZXJ0aWNhbFN0YXJ0\n"
+			+ "eHAAAAABAAAAABgAAAAPAAAAAQAAAAAAAAAHAAAACgAAAAJzcQB+AAIAAAABAAAAAB4AAAAKAAAA\n"
+			+ "AQAAAAAAAAAIAAAACgAAAAJ4\n";
+	
+	/**
+	 * Check the modes have their default values.
+	 */
+	/* package */ static void assertDefaultModes(AhudConfiguration conf) {
+		AhudConfiguration defaults = new AhudConfiguration();
+		assertEquals(defaults.getMotionMode(), conf.getMotionMode());
+		assertEquals(defaults.getRenderMode(), conf.getRenderMode());
+		assertEquals(defaults.getInputMode(), conf.getInputMode());
+		assertEquals(defaults.getGesture(), conf.getGesture());
+		assertEquals(AhudConfiguration.INPUT_CLICK, conf.getInputMode());
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void firstVersionReadsDefaultModes() throws IOException, ClassNotFoundException {
+		ArrayList<AhudConfiguration> configurations = 
+				(ArrayList<AhudConfiguration>) Serializer.fromString(FIRST_VERSION_PROFILES);
+		assertEquals(2, configurations.size());
+		assertEquals(7, configurations.get(0).getId());
+		assertEquals(15, configurations.get(0).getHorizontalSpeed());
+		assertEquals(30, configurations.get(1).getAxisWidth());
+		for (AhudConfiguration conf : configurations) {
+			assertDefaultModes(conf);
+		}
+	}
+	
+	@Test
+	public void unknownModesReadDefaults() {
+		AhudConfiguration conf = new AhudConfiguration();
+		conf.mMotionMode = 0;
+		conf.mRenderMode = 9;
+		conf.mInputMode = -1;
+		conf.mGesture = 0;
+		conf.normalize();
+		assertDefaultModes(conf);
+	}
+	
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.limbika.ahud.core.AxisScanner;
+import com.limbika.ahud.core.Clock;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * The frame path of the renderers must not allocate once it is warm: one move
+ * of the scanner, the publish of the position to the event stream, the record
+ * of the frame interval and one draw of the painter.
+ * <p>
+ * It runs on the JVM with the Android classes replaced, so the parts of 
+ * <code>AhudView</code> and <code>AhudSurfaceView</code> that need the framework
+ * are not covered: the invalidation of the axis, the moves of the sprite window
+ * and the dropped frame count of <code>AhudMetrics</code>. Those are checked on
+ * a device.
+ */
+public class AxisPainterAllocationTest {
+
+	private static final int	WIDTH			= 1080;
+	private static final int	HEIGHT			= 1920;
+	private static final long	FRAME_NANOS		= 1000000000L / 120;
+	private static final int	WARMUP_FRAMES	= 200000;
+	private static final int	FRAMES			= 100000;
+	
+	/**
+	 * Canvas that counts the draw calls. It keeps the last arguments so they
+	 * escape, the JIT can not remove their allocation like ART would not.
+	 */
+	private static class RecordingCanvas extends Canvas {
+		long draws;
+		Object lastShape;
+		Paint lastPaint;
+		
+		@Override
+		public void drawRect(Rect rect, Paint paint) {
+			draws++;
+			lastShape = rect;
+			lastPaint = paint;
+		}
+		
+		@Override
+		public void drawRect(RectF rect, Paint paint) {
+			draws++;
+			lastShape = rect;
+			lastPaint = paint;
+		}
+		
+		@Override
+		public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+			draws++;
+			lastShape = rect;
+			lastPaint = paint;
+		}
+		
+		@Override
+		public void drawCircle(float cx, float cy, float radius, Paint paint) {
+			draws++;
+			lastPaint = paint;
+		}
+		
+		@Override
+		public void drawLines(float[] pts, Paint paint) {
+			draws++;
+			lastShape = pts;
+			lastPaint = paint;
+		}
+	}
+	
+	/**
+	 * Clock moved by the test.
+	 */
+	private static class FrameClock implements Clock {
+		long nanos;
+		
+		@Override
+		public long nanoTime() {
+			return nanos;
+		}
+	}
+	
+	/**
+	 * The renderers state while the scan goes on: frames of both axis, with 
+	 * the clicks that move from one to the next.
+	 */
+	private static class Frames {
+		final RecordingCanvas	canvas		= new RecordingCanvas();
+		final FrameClock		clock		= new FrameClock();
+		final AxisScanner		scanner;
+		final AxisPainter		painter;
+		final AhudEventStream	events		= new AhudEventStream(1024);
+		final Histogram			intervals	= new Histogram();
+		final boolean			isFrameClock;
+		
+		Frames(int motionMode) {
+			AhudConfigurationSnapshot conf = new AhudConfigurationSnapshot.Builder()
+					.setMotionMode(motionMode)
+					.build();
+			scanner = new AxisScanner(clock, conf.getAxisInital(), conf.getHorizontalSpeed(), conf.getVerticalSpeed());
+			scanner.setFieldSize(WIDTH, HEIGHT);
+			painter = new AxisPainter(conf);
+			isFrameClock = motionMode == AhudConfiguration.MOTION_CLOCK;
+		}
+		
+		void run(int count) {
+			for (int i = 0; i < count; i++) {
+				clock.nanos += FRAME_NANOS;
+				if ( isFrameClock )
+					scanner.advance(clock.nanos);
+				else
+					scanner.step(1F);
+				events.publish(AhudEventStream.TYPE_POSITION, clock.nanos, scanner);
+				intervals.recordNanos(FRAME_NANOS);
+				painter.draw(canvas, scanner);
+				if ( i % 500 == 499 ) {
+					// First axis, second axis, cross and a new scan
+					if ( scanner.click() )
+						scanner.reset();
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void frameStepDoesNotAllocate() {
+		assertNoAllocation(new Frames(AhudConfiguration.MOTION_FRAME));
+	}
+	
+	@Test
+	public void frameClockDoesNotAllocate() {
+		assertNoAllocation(new Frames(AhudConfiguration.MOTION_CLOCK));
+	}
+	
+	private static void assertNoAllocation(Frames frames) {
+		Object bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof ThreadMXBean);
+		ThreadMXBean threads = (ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+		long thread = Thread.currentThread().getId();
+		
+		frames.run(WARMUP_FRAMES);
+		long drawsBefore = frames.canvas.draws;
+		long before = threads.getThreadAllocatedBytes(thread);
+		frames.run(FRAMES);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		
+		assertTrue("Nothing was drawn", frames.canvas.draws - drawsBefore >= FRAMES);
+		assertEquals("Bytes allocated in " + FRAMES + " frames", 0, allocated);
+	}
+
+}
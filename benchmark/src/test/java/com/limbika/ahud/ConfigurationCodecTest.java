@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Fields of a newer version are skipped, and a malformed one is an
+ * {@link IOException} like the rest of a damaged input.
+ */
+public class ConfigurationCodecTest {
+
+	// Key of the field with tag 30 and a length and bytes as value
+	private static final int	BYTES_FIELD		= 30 << 3 | 2;
+	// Key of the id, a variable length integer
+	private static final int	ID_FIELD		= 1 << 3;
+	
+	private static AhudConfiguration read(int... bytes) throws IOException {
+		byte[] input = new byte[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			input[i] = (byte) bytes[i];
+		}
+		return ConfigurationCodec.readConfiguration(new DataInputStream(new ByteArrayInputStream(input)));
+	}
+	
+	private static void assertMalformed(int... bytes) {
+		try {
+			read(bytes);
+			fail("A malformed configuration was read");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+	
+	@Test
+	public void unknownFieldIsSkipped() throws IOException {
+		// Length 3 is 6 zigzag encoded, the id 5 is 10
+		assertEquals(5, read(BYTES_FIELD, 6, 'a', 'b', 'c', ID_FIELD, 10, 0).getId());
+	}
+	
+	@Test
+	public void negativeLengthIsMalformed() {
+		// Length -1 is 1 zigzag encoded
+		assertMalformed(BYTES_FIELD, 1, ID_FIELD, 10, 0);
+	}
+	
+	@Test
+	public void lengthPastTheEndIsMalformed() {
+		// Length 1000 is 2000 zigzag encoded, two bytes
+		assertMalformed(BYTES_FIELD, 2000 & 0x7F | 0x80, 2000 >>> 7, 'a', 0);
+	}
+	
+	@Test
+	public void negativeCountIsMalformed() {
+		try {
+			ConfigurationCodec.decode(new byte[] { 'A', 'H', 'U', 'D', 1, -1, -1, -1, -1 });
+			fail("A negative count was read");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+	
+}
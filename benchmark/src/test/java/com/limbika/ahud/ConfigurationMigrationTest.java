@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.limbika.ahud.benchmark.MemoryContext;
+
+/**
+ * The profiles of the first version, serialized in the preferences, move to 
+ * the store with the default modes.
+ */
+public class ConfigurationMigrationTest {
+
+	@Test
+	public void serializedProfilesMoveWithDefaultModes() throws IOException {
+		MemoryContext context = new MemoryContext();
+		context.getSharedPreferences(AHUD.PKG, 0).edit()
+				.putString(AHUD.PKG, AhudConfigurationTest.FIRST_VERSION_PROFILES)
+				.commit();
+		AhudConfigurationManager manager = AhudConfigurationManager.get(context);
+		assertEquals(2, manager.getAllIds().length);
+		assertEquals(15, manager.findConfById(7).getHorizontalSpeed());
+		AhudConfigurationTest.assertDefaultModes(manager.findConfById(7));
+		
+		// What was written, not the migrated instances
+		ConfigurationStore store = new ConfigurationStore(new File(context.getFilesDir(), AHUD.PKG + ".log"));
+		store.open();
+		assertEquals(2, store.getIds().length);
+		assertEquals(15, store.read(7).getHorizontalSpeed());
+		assertEquals(30, store.read(8).getAxisWidth());
+		AhudConfigurationTest.assertDefaultModes(store.read(7));
+		AhudConfigurationTest.assertDefaultModes(store.read(8));
+		store.close();
+	}
+	
+	@Test
+	public void storedZeroModesReadDefaults() throws IOException {
+		// As written by the migration of the versions before this fix
+		AhudConfiguration conf = new AhudConfiguration();
+		conf.setId(7);
+		conf.mMotionMode = 0;
+		conf.mRenderMode = 0;
+		conf.mInputMode = 0;
+		conf.mGesture = 0;
+		byte[] bytes = ConfigurationCodec.encode(Arrays.asList(conf));
+		AhudConfigurationTest.assertDefaultModes(ConfigurationCodec.decode(bytes).get(0));
+	}
+	
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * The configuration log: what is appended is read again after an open, and a
+ * damaged log is detected instead of read as configurations.
+ */
+public class ConfigurationStoreTest {
+
+	private static AhudConfiguration configuration(long id, int speed) {
+		AhudConfiguration conf = new AhudConfiguration();
+		conf.setId(id);
+		conf.setHorizontalSpeed(speed);
+		return conf;
+	}
+	
+	private static File newLog() throws IOException {
+		File file = File.createTempFile("ahud", ".log");
+		file.delete();
+		file.deleteOnExit();
+		new File(file.getPath() + ".bad").deleteOnExit();
+		return file;
+	}
+	
+	@Test
+	public void appendedRecordsAreReadAfterOpen() throws IOException {
+		File file = newLog();
+		ConfigurationStore store = new ConfigurationStore(file);
+		store.create(Arrays.asList(configuration(1, 10), configuration(2, 20)));
+		store.append(Arrays.asList(
+				ConfigurationStore.add(configuration(3, 30)),
+				ConfigurationStore.update(configuration(1, 11)),
+				ConfigurationStore.remove(2)));
+		store.close();
+		
+		store = new ConfigurationStore(file);
+		store.open();
+		long[] ids = store.getIds();
+		assertEquals(2, ids.length);
+		assertEquals(1, ids[0]);
+		assertEquals(3, ids[1]);
+		assertEquals(11, store.read(1).getHorizontalSpeed());
+		assertEquals(30, store.read(3).getHorizontalSpeed());
+		assertNull(store.read(2));
+		store.close();
+	}
+	
+	@Test
+	public void corruptRecordFailsToRead() throws IOException {
+		File file = newLog();
+		ConfigurationStore store = new ConfigurationStore(file);
+		store.create(Arrays.asList(configuration(1, 10), configuration(2, 20), configuration(3, 30)));
+		store.close();
+		
+		// The last byte of the payload of the second record
+		long length = file.length();
+		long recordLength = (length - 5) / 3;
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		access.seek(5 + 2 * recordLength - 1);
+		int value = access.read();
+		access.seek(5 + 2 * recordLength - 1);
+		access.write(value ^ 0xFF);
+		access.close();
+		
+		store = new ConfigurationStore(file);
+		store.open();
+		assertEquals(3, store.getIds().length);
+		assertEquals(10, store.read(1).getHorizontalSpeed());
+		assertEquals(30, store.read(3).getHorizontalSpeed());
+		try {
+			store.read(2);
+			fail("A corrupt record was read");
+		} catch (CorruptConfigurationException e) {
+			// Expected
+		}
+		store.close();
+	}
+	
+	@Test
+	public void cutRecordIsDropped() throws IOException {
+		File file = newLog();
+		ConfigurationStore store = new ConfigurationStore(file);
+		store.create(Arrays.asList(configuration(1, 10)));
+		store.append(Arrays.asList(ConfigurationStore.add(configuration(2, 20))));
+		store.close();
+		
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		access.setLength(access.length() - 3);
+		access.close();
+		
+		store = new ConfigurationStore(file);
+		store.open();
+		assertEquals(1, store.getIds().length);
+		store.append(Arrays.asList(ConfigurationStore.add(configuration(3, 30))));
+		store.close();
+		
+		store = new ConfigurationStore(file);
+		store.open();
+		assertEquals(2, store.getIds().length);
+		assertEquals(30, store.read(3).getHorizontalSpeed());
+		store.close();
+	}
+	
+	@Test
+	public void compactionKeepsTheLiveRecords() throws IOException {
+		File file = newLog();
+		ConfigurationStore store = new ConfigurationStore(file);
+		store.create(Arrays.asList(configuration(1, 10), configuration(2, 20)));
+		for (int i = 0; i < 100; i++) {
+			store.append(Arrays.asList(ConfigurationStore.update(configuration(1, i))));
+		}
+		long length = file.length();
+		store.close();
+		assertTrue("The log was not compacted", length < 20 * 100);
+		
+		store = new ConfigurationStore(file);
+		store.open();
+		long[] ids = store.getIds();
+		assertEquals(2, ids.length);
+		assertEquals(1, ids[0]);
+		assertEquals(99, store.read(1).getHorizontalSpeed());
+		assertEquals(20, store.read(2).getHorizontalSpeed());
+		store.close();
+	}
+	
+	@Test
+	public void firstVersionIsWrittenAgain() throws IOException {
+		File file = newLog();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(0x4148554C);
+		out.writeByte(1);
+		for (int i = 1; i <= 2; i++) {
+			ConfigurationStore.Record record = ConfigurationStore.add(configuration(i, 10 * i));
+			out.writeByte(record.type);
+			out.writeLong(record.id);
+			out.writeInt(record.payload.length);
+			out.write(record.payload);
+		}
+		out.close();
+		
+		ConfigurationStore store = new ConfigurationStore(file);
+		store.open();
+		assertEquals(20, store.read(2).getHorizontalSpeed());
+		store.close();
+		
+		RandomAccessFile access = new RandomAccessFile(file, "r");
+		access.seek(4);
+		assertEquals(2, access.read());
+		access.close();
+		store = new ConfigurationStore(file);
+		store.open();
+		assertEquals(10, store.read(1).getHorizontalSpeed());
+		assertEquals(20, store.read(2).getHorizontalSpeed());
+		store.close();
+	}
+	
+	@Test
+	public void unreadableLogIsSetAside() throws IOException {
+		File file = newLog();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		out.close();
+		
+		ConfigurationStore store = new ConfigurationStore(file);
+		try {
+			store.open();
+			fail("A file that is not a log was opened");
+		} catch (CorruptConfigurationException e) {
+			// Expected
+		}
+		store.reset(Collections.<AhudConfiguration>emptyList());
+		assertTrue(new File(file.getPath() + ".bad").exists());
+		store.append(Arrays.asList(ConfigurationStore.add(configuration(1, 10))));
+		store.close();
+		
+		store = new ConfigurationStore(file);
+		store.open();
+		assertEquals(10, store.read(1).getHorizontalSpeed());
+		store.close();
+	}
+	
+	@Test
+	public void appendOpensAfterClose() throws IOException {
+		File file = newLog();
+		ConfigurationStore store = new ConfigurationStore(file);
+		store.create(new ArrayList<AhudConfiguration>());
+		store.close();
+		store.append(Arrays.asList(ConfigurationStore.add(configuration(1, 10))));
+		assertEquals(10, store.read(1).getHorizontalSpeed());
+		store.close();
+	}
+	
+}
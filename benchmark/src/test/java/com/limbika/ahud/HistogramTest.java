@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * The histograms are recorded from the render threads and the main thread at 
+ * once, without locks.
+ */
+public class HistogramTest {
+
+	private static final int	THREADS			= 4;
+	private static final int	VALUES			= 100000;
+	
+	@Test
+	public void bucketsHoldTheirBounds() {
+		for (int i = 0; i < Histogram.BUCKET_COUNT - 1; i++) {
+			Histogram histogram = new Histogram();
+			histogram.record(Histogram.getBucketLowerBound(i));
+			histogram.record(Histogram.getBucketUpperBound(i) - 1);
+			assertEquals(2, histogram.getBucketCount(i));
+		}
+	}
+	
+	@Test
+	public void concurrentRecordsAreAllCounted() throws InterruptedException {
+		final Histogram histogram = new Histogram();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int offset = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= VALUES; i++) {
+						histogram.record(i + offset);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		Histogram snapshot = new Histogram();
+		snapshot.copyFrom(histogram);
+		long buckets = 0;
+		for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+			buckets += snapshot.getBucketCount(i);
+		}
+		assertEquals(THREADS * VALUES, snapshot.getCount());
+		assertEquals(THREADS * VALUES, buckets);
+		assertEquals(1, snapshot.getMin());
+		assertEquals(VALUES + THREADS - 1, snapshot.getMax());
+		// Each thread adds VALUES * (VALUES + 1) / 2 and VALUES times its offset
+		long sum = THREADS * ((long) VALUES * (VALUES + 1) / 2) + (long) VALUES * THREADS * (THREADS - 1) / 2;
+		assertEquals(sum / (THREADS * VALUES), snapshot.getMean());
+	}
+	
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud.core;
+
+/**
+ * Scanning engine of the Accessibility HUD.
+ * <p>
+ * Moves the first axis until a click, then the second axis until the next 
+ * click crosses them. Plain Java, the renderers only draw its state.
+ */
+public class AxisScanner {
+	
+	//-------------------------------------------------------------------------
+	// Public constants
+	/** Axis horizontal */
+	public static final int		AXIS_HORIZONTAL		= 1;
+	/** Axis vertical */
+	public static final int		AXIS_VERTICAL		= 2;
+	/** Scanning the first axis */
+	public static final int		STATE_FIRST_LINE 	= 1;
+	/** Scanning the second axis */
+	public static final int		STATE_SECOND_LINE 	= 2;
+	/** The axis are crossed */
+	public static final int		STATE_CROSS			= 3;
+	/** Paused */
+	public static final int		STATE_PAUSE			= 4;
+	/** Frame rate used to convert the speeds to pixels per second */
+	public static final int		REFERENCE_FRAME_RATE = 60;
+	
+	//-------------------------------------------------------------------------
+	// Constants
+	private static final float	FAR_EDGE			= -1;	// Resolved with the field size
+	private static final long	NANOS_PER_SECOND	= 1000000000L;
+	private static final long	MAX_FRAME_DELTA		= NANOS_PER_SECOND / 10;	// Longer stalls are clamped
+	private static final int	HISTORY_SIZE		= 128;	// About one second at 120 Hz
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final Clock			mClock;
+	private int					mInitialAxis;
+	private float				mHorizontalSpeed;
+	private float				mVerticalSpeed;
+	private int 				mState 				= STATE_FIRST_LINE;
+	private int					mMovingAxis;
+	private int 				mHorizontalDirectionFactor = 1;
+	private int 				mVerticalDirectionFactor = 1;
+	private float 				mHorizontalPosition;
+	private float 				mVerticalPosition;
+	private int					mFieldWidth;
+	private int					mFieldHeight;
+	private long				mLastFrameNanos;
+	private boolean				mIsStartFromRight;
+	private boolean				mIsStartFromBottom;
+	
+	// Position history of the current state, a ring of samples
+	private final long[]		mHistoryTimes		= new long[HISTORY_SIZE];
+	private final float[]		mHistoryPositions	= new float[HISTORY_SIZE];
+	private final int[]			mHistoryDirections	= new int[HISTORY_SIZE];
+	private int					mHistoryHead;		// Next sample
+	private int					mHistoryCount;
+	
+	/**
+	 * Creates a scanner with the system clock.
+	 * @param initialAxis The first axis, 1 to horizontal, 2 to vertical.
+	 * @param horizontalSpeed The speed of the horizontal axis in pixels per frame.
+	 * @param verticalSpeed The speed of the vertical axis in pixels per frame.
+	 */
+	public AxisScanner(int initialAxis, float horizontalSpeed, float verticalSpeed) {
+		this(Clock.SYSTEM, initialAxis, horizontalSpeed, verticalSpeed);
+	}
+	
+	/**
+	 * Creates a scanner.
+	 * @param clock The clock for {@link #advance()}.
+	 * @param initialAxis The first axis, 1 to horizontal, 2 to vertical.
+	 * @param horizontalSpeed The speed of the horizontal axis in pixels per frame.
+	 * @param verticalSpeed The speed of the vertical axis in pixels per frame.
+	 */
+	public AxisScanner(Clock clock, int initialAxis, float horizontalSpeed, float verticalSpeed) {
+		mClock = clock;
+		mInitialAxis = initialAxis;
+		mMovingAxis = initialAxis;
+		mHorizontalSpeed = horizontalSpeed;
+		mVerticalSpeed = verticalSpeed;
+	}
+	
+	/**
+	 * Set where the axis start, moving away from the edge.
+	 * @param fromRight True to start the vertical axis at the right edge.
+	 * @param fromBottom True to start the horizontal axis at the bottom edge.
+	 */
+	public void setStart(boolean fromRight, boolean fromBottom) {
+		mIsStartFromRight = fromRight;
+		mIsStartFromBottom = fromBottom;
+		mVerticalPosition = fromRight ? FAR_EDGE : 0;
+		mHorizontalPosition = fromBottom ? FAR_EDGE : 0;
+		mVerticalDirectionFactor = 1;
+		mHorizontalDirectionFactor = 1;
+	}
+	
+	/**
+	 * Change the speeds, from the next move.
+	 * @param horizontalSpeed The speed of the horizontal axis in pixels per frame.
+	 * @param verticalSpeed The speed of the vertical axis in pixels per frame.
+	 */
+	public void setSpeeds(float horizontalSpeed, float verticalSpeed) {
+		mHorizontalSpeed = horizontalSpeed;
+		mVerticalSpeed = verticalSpeed;
+	}
+	
+	/**
+	 * Change the first axis, from the next {@link #reset()}.
+	 * @param initialAxis {@link #AXIS_HORIZONTAL} or {@link #AXIS_VERTICAL}.
+	 */
+	public void setInitialAxis(int initialAxis) {
+		mInitialAxis = initialAxis;
+	}
+	
+	/**
+	 * Continue from a previous scan.
+	 * @param x The position of the vertical axis.
+	 * @param y The position of the horizontal axis.
+	 * @param directionX The direction of the vertical axis, 1 or -1.
+	 * @param directionY The direction of the horizontal axis, 1 or -1.
+	 */
+	public void restore(float x, float y, int directionX, int directionY) {
+		mVerticalPosition = x;
+		mHorizontalPosition = y;
+		mVerticalDirectionFactor = directionX;
+		mHorizontalDirectionFactor = directionY;
+	}
+	
+	/**
+	 * Set the scanned area and resolve the positions that start at the far edge.
+	 * @param width The width in pixels.
+	 * @param height The height in pixels.
+	 */
+	public void setFieldSize(int width, int height) {
+		mFieldWidth = width;
+		mFieldHeight = height;
+		mVerticalPosition = mVerticalPosition == FAR_EDGE ? mFieldWidth : mVerticalPosition;
+		mHorizontalPosition = mHorizontalPosition == FAR_EDGE ? mFieldHeight : mHorizontalPosition;
+	}
+	
+	/**
+	 * Move the moving axis.
+	 * @param frames The elapsed frames at {@link #REFERENCE_FRAME_RATE}, 1 for a 
+	 * fixed step on each drawn frame.
+	 */
+	public void step(float frames) {
+		move(frames);
+		record(mClock.nanoTime());
+	}
+	
+	/**
+	 * Move the moving axis the time elapsed from the last call in the clock.
+	 */
+	public void advance() {
+		advance(mClock.nanoTime());
+	}
+	
+	/**
+	 * Move the moving axis the time elapsed from the last call. The first call 
+	 * after a state change only takes the time.
+	 * @param frameTimeNanos The time of the frame, in the time base of the clock.
+	 */
+	public void advance(long frameTimeNanos) {
+		if ( !isScanning() )
+			return;
+		if ( mLastFrameNanos != 0 ) {
+			long delta = Math.min(frameTimeNanos - mLastFrameNanos, MAX_FRAME_DELTA);
+			if ( delta > 0 )
+				move((float) delta * REFERENCE_FRAME_RATE / NANOS_PER_SECOND);
+		}
+		mLastFrameNanos = frameTimeNanos;
+		record(frameTimeNanos);
+	}
+	
+	/**
+	 * Go to next state, usually after a click.
+	 * @return True if the axis are crossed.
+	 */
+	public boolean click() {
+		clearHistory();
+		switch (mState) {
+		case STATE_FIRST_LINE:
+			mState = STATE_SECOND_LINE;
+			switchMovingAxis();
+			break;
+
+		case STATE_SECOND_LINE:
+			mState = STATE_CROSS;
+			return true;
+			
+		case STATE_PAUSE:
+			mState = STATE_FIRST_LINE;
+			mLastFrameNanos = 0;
+			return false;
+		}
+		return false;
+	}
+	
+	/**
+	 * Go to next state with the moving axis where it was at the given time,
+	 * usually the time of the touch. The position comes from the history of the
+	 * current axis, older times take the oldest position.
+	 * @param timeNanos The time, in the time base of the clock.
+	 * @return True if the axis are crossed.
+	 */
+	public boolean click(long timeNanos) {
+		if ( isScanning() && mHistoryCount > 0 ) {
+			int index = findHistory(timeNanos);
+			float position = mHistoryPositions[index];
+			int direction = mHistoryDirections[index];
+			int next = (index + 1) % HISTORY_SIZE;
+			if ( index != lastHistory() && mHistoryTimes[next] > mHistoryTimes[index] ) {
+				// Between two samples, interpolate
+				float fraction = (float) (timeNanos - mHistoryTimes[index]) / (mHistoryTimes[next] - mHistoryTimes[index]);
+				position += (mHistoryPositions[next] - position) * Math.max(0F, Math.min(1F, fraction));
+				direction = mHistoryDirections[next];
+			}
+			if (mMovingAxis == AXIS_HORIZONTAL) {
+				mHorizontalPosition = position;
+				mHorizontalDirectionFactor = direction;
+			}
+			else {
+				mVerticalPosition = position;
+				mVerticalDirectionFactor = direction;
+			}
+		}
+		return click();
+	}
+	
+	/**
+	 * Start again from the first axis.
+	 */
+	public void reset() {
+		clearHistory();
+		mMovingAxis = mInitialAxis;
+		mState = STATE_FIRST_LINE;
+		mLastFrameNanos = 0;
+	}
+	
+	/**
+	 * Pause the scan.
+	 */
+	public void pause() {
+		mState = STATE_PAUSE;
+	}
+	
+	/**
+	 * @return True if an axis is moving.
+	 */
+	public boolean isScanning() {
+		return mState == STATE_FIRST_LINE || mState == STATE_SECOND_LINE;
+	}
+	
+	public Clock getClock() {
+		return mClock;
+	}
+	
+	public int getState() {
+		return mState;
+	}
+	
+	public int getInitialAxis() {
+		return mInitialAxis;
+	}
+	
+	public int getMovingAxis() {
+		return mMovingAxis;
+	}
+	
+	/**
+	 * @return The edge of the vertical axis in the last {@link #setStart(boolean, boolean)}.
+	 */
+	public boolean isStartFromRight() {
+		return mIsStartFromRight;
+	}
+	
+	/**
+	 * @return The edge of the horizontal axis in the last {@link #setStart(boolean, boolean)}.
+	 */
+	public boolean isStartFromBottom() {
+		return mIsStartFromBottom;
+	}
+	
+	/**
+	 * @return The position of the vertical axis.
+	 */
+	public float getVerticalPosition() {
+		return mVerticalPosition;
+	}
+	
+	/**
+	 * @return The position of the horizontal axis.
+	 */
+	public float getHorizontalPosition() {
+		return mHorizontalPosition;
+	}
+	
+	public int getFieldWidth() {
+		return mFieldWidth;
+	}
+	
+	public int getFieldHeight() {
+		return mFieldHeight;
+	}
+	
+	public int getXDirection() {
+		return mVerticalDirectionFactor;
+	}
+	
+	public int getYDirection() {
+		return mHorizontalDirectionFactor;
+	}
+	
+	private void move(float frames) {
+		checkLimits();
+		updatePosition(frames);
+	}
+	
+	private void record(long timeNanos) {
+		int index = mHistoryHead;
+		mHistoryTimes[index] = timeNanos;
+		if (mMovingAxis == AXIS_HORIZONTAL) {
+			mHistoryPositions[index] = mHorizontalPosition;
+			mHistoryDirections[index] = mHorizontalDirectionFactor;
+		}
+		else {
+			mHistoryPositions[index] = mVerticalPosition;
+			mHistoryDirections[index] = mVerticalDirectionFactor;
+		}
+		mHistoryHead = (index + 1) % HISTORY_SIZE;
+		mHistoryCount = Math.min(mHistoryCount + 1, HISTORY_SIZE);
+	}
+	
+	private void clearHistory() {
+		mHistoryHead = 0;
+		mHistoryCount = 0;
+	}
+	
+	private int lastHistory() {
+		return (mHistoryHead + HISTORY_SIZE - 1) % HISTORY_SIZE;
+	}
+	
+	/**
+	 * @return The index of the last sample at or before the time, or the oldest one.
+	 */
+	private int findHistory(long timeNanos) {
+		int index = lastHistory();
+		for (int i=1;i<mHistoryCount;i++) {
+			if ( mHistoryTimes[index] <= timeNanos )
+				return index;
+			index = (index + HISTORY_SIZE - 1) % HISTORY_SIZE;
+		}
+		return index;
+	}
+	
+	private void updatePosition (float frames) {
+		if (mMovingAxis == AXIS_HORIZONTAL)
+		{
+			mHorizontalPosition =(mHorizontalPosition + mHorizontalDirectionFactor * mHorizontalSpeed * frames);
+		}
+		else if (mMovingAxis == AXIS_VERTICAL)
+		{
+			mVerticalPosition = (mVerticalPosition + mVerticalDirectionFactor * mVerticalSpeed * frames);		
+		}
+	}
+	
+	private void checkLimits() {
+		if (mVerticalPosition >= mFieldWidth) {
+			mVerticalDirectionFactor = -1;
+		}
+		if (mHorizontalPosition >= mFieldHeight) {
+			mHorizontalDirectionFactor = -1;
+		}
+		if (mVerticalPosition <= 0) {
+			mVerticalDirectionFactor = 1;
+		}
+		if (mHorizontalPosition <= 0) {
+			mHorizontalDirectionFactor = 1;
+		}
+	}
+	
+	private void switchMovingAxis() {
+		if (mMovingAxis == AXIS_HORIZONTAL)
+			mMovingAxis = AXIS_VERTICAL;
+		else
+			mMovingAxis = AXIS_HORIZONTAL;
+	}
+	
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud.core;
+
+/**
+ * Source of time for the {@link AxisScanner}, in nanoseconds of a monotonic clock.
+ * <p>
+ * Inject a fake clock to simulate scans without a device.
+ */
+public interface Clock {
+	
+	/**
+	 * The system monotonic clock, the time base of the Android frame and input events.
+	 */
+	public static final Clock SYSTEM = new Clock() {
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+	
+	/**
+	 * @return The current time in nanoseconds.
+	 */
+	public long nanoTime();
+
+}
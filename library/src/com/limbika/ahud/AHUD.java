@@ -19,6 +19,8 @@
 
 package com.limbika.ahud;
 
+import android.os.Build;
+import android.os.Trace;
 import android.util.Log;
 
 /** Constants class. */
@@ -32,4 +34,40 @@ import android.util.Log;
 	}
 	public static final String PKG = AHUD.class.getPackage().getName();
 	
+	//-------------------------------------------------------------------------
+	// Trace sections, shown by systrace and Perfetto
+	private static volatile boolean sIsTracing = false;
+	
+	public static void setTracing(boolean tracing) {
+		sIsTracing = tracing;
+	}
+	
+	/**
+	 * Begin a trace section in this thread, closed by {@link #endSection()}. 
+	 * From API 18.
+	 */
+	public static void beginSection(String name) {
+		if ( sIsTracing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 )
+			Trace.beginSection(name);
+	}
+	
+	public static void endSection() {
+		if ( sIsTracing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 )
+			Trace.endSection();
+	}
+	
+	/**
+	 * Begin a trace section that can end in other thread. From API 29.
+	 * @param cookie The id of this section among the ones with the same name.
+	 */
+	public static void beginAsyncSection(String name, int cookie) {
+		if ( sIsTracing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q )
+			Trace.beginAsyncSection(name, cookie);
+	}
+	
+	public static void endAsyncSection(String name, int cookie) {
+		if ( sIsTracing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q )
+			Trace.endAsyncSection(name, cookie);
+	}
+	
 }
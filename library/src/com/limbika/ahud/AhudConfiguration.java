@@ -19,17 +19,21 @@
 
 package com.limbika.ahud;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
+import com.limbika.ahud.core.AxisScanner;
+
 /** Accessibility HUD preferences */
 public class AhudConfiguration implements Serializable {
 	
 	//-------------------------------------------------------------------------
 	// Public constants
 	/** Axis horizontal */
-	public static final int 	AXIS_HORIZONTAL 	= 1;
+	public static final int 	AXIS_HORIZONTAL 	= AxisScanner.AXIS_HORIZONTAL;
 	/** Axis vertical */
-	public static final int		AXIS_VERTICAL 		= 2;
+	public static final int		AXIS_VERTICAL 		= AxisScanner.AXIS_VERTICAL;
 	/** Start from top */
 	public static final int		START_TOP			= 1;
 	/** Start from left */
@@ -38,6 +42,30 @@ public class AhudConfiguration implements Serializable {
 	public static final int		START_RIGTH			= 3;
 	/** Start from bottom */
 	public static final int		START_BOTTOM		= 4;
+	/** Move the axis a fixed step on every drawn frame */
+	public static final int		MOTION_FRAME		= 1;
+	/** Move the axis from the elapsed vsync time */
+	public static final int		MOTION_CLOCK		= 2;
+	/** Frame rate used to convert the speeds to pixels per second */
+	public static final int		REFERENCE_FRAME_RATE = AxisScanner.REFERENCE_FRAME_RATE;
+	/** Draw the axis in a full screen window */
+	public static final int		RENDER_FULLSCREEN	= 1;
+	/** Draw the axis in a window of one band that moves with the axis */
+	public static final int		RENDER_SPRITE		= 2;
+	/** Draw the axis in a surface from its own render thread */
+	public static final int		RENDER_SURFACE		= 3;
+	/** Select with a click, when the finger goes up */
+	public static final int		INPUT_CLICK			= 1;
+	/** Select when the finger goes down, at the position of the touch time */
+	public static final int		INPUT_DOWN			= 2;
+	/** Inject a tap at the cross */
+	public static final int		GESTURE_TAP			= 1;
+	/** Inject a double tap at the cross */
+	public static final int		GESTURE_DOUBLE_TAP	= 2;
+	/** Inject a long press at the cross */
+	public static final int		GESTURE_LONG_PRESS	= 3;
+	/** Inject a swipe from one cross to the next one */
+	public static final int		GESTURE_SWIPE		= 4;
 
 	/** Generated serial version */
 	private static final long serialVersionUID = -3972796583383872919L;
@@ -50,6 +78,13 @@ public class AhudConfiguration implements Serializable {
 	private static final int		DEFAULT_WIDTH 				= 24;
 	private static final int		DEFAULT_HORIZONTAL_START	= START_TOP;
 	private static final int		DEFAULT_VERTICAL_START		= START_LEFT;
+	private static final int		DEFAULT_MOTION_MODE			= MOTION_FRAME;
+	private static final int		DEFAULT_RENDER_MODE			= RENDER_FULLSCREEN;
+	private static final boolean	DEFAULT_OVERLAY_KEPT		= false;
+	private static final boolean	DEFAULT_SINGLE_WINDOW		= false;
+	private static final int		DEFAULT_INPUT_MODE			= INPUT_CLICK;
+	private static final int		DEFAULT_REACTION_TIME		= 0;
+	private static final int		DEFAULT_GESTURE				= GESTURE_TAP;
 
 	//-------------------------------------------------------------------------
 	// Members
@@ -61,6 +96,15 @@ public class AhudConfiguration implements Serializable {
 	/* package */ int mVerticalSpeed = DEFAULT_SPEED;
 	/* package */ int mHorizontalStart = DEFAULT_HORIZONTAL_START;
 	/* package */ int mVerticalStart = DEFAULT_VERTICAL_START;
+	/* package */ int mMotionMode = DEFAULT_MOTION_MODE;
+	/* package */ int mRenderMode = DEFAULT_RENDER_MODE;
+	/* package */ boolean mOverlayKept = DEFAULT_OVERLAY_KEPT;
+	/* package */ boolean mSingleWindow = DEFAULT_SINGLE_WINDOW;
+	/* package */ int mInputMode = DEFAULT_INPUT_MODE;
+	/* package */ int mReactionTime = DEFAULT_REACTION_TIME;
+	/* package */ int mGesture = DEFAULT_GESTURE;
+	// Changed since it was stored, not stored itself
+	/* package */ transient boolean mChanged = false;
 
 	/**
 	 * Default configuration parameters.
@@ -123,6 +167,55 @@ public class AhudConfiguration implements Serializable {
 		return mVerticalStart;
 	}
 
+	/**
+	 * @return The motion mode, 1 to frame steps, 2 to frame clock.
+	 */
+	public int getMotionMode() {
+		return mMotionMode;
+	}
+
+	/**
+	 * @return The render mode, 1 to full screen, 2 to sprite window, 3 to surface.
+	 */
+	public int getRenderMode() {
+		return mRenderMode;
+	}
+
+	/**
+	 * @return True if the overlay windows are kept across the crosses.
+	 */
+	public boolean isOverlayKept() {
+		return mOverlayKept;
+	}
+
+	/**
+	 * @return True if the axis and the touches share one window.
+	 */
+	public boolean isSingleWindow() {
+		return mSingleWindow;
+	}
+
+	/**
+	 * @return The input mode, 1 to click, 2 to finger down.
+	 */
+	public int getInputMode() {
+		return mInputMode;
+	}
+	
+	/**
+	 * @return The reaction time of the user in milliseconds.
+	 */
+	public int getReactionTime() {
+		return mReactionTime;
+	}
+	
+	/**
+	 * @return The gesture of the cross, 1 to tap, 2 to double tap, 3 to long press, 4 to swipe.
+	 */
+	public int getGesture() {
+		return mGesture;
+	}
+
 	/**
 	 * Set the id of the configuration.
 	 * @param id The id.
@@ -137,6 +230,7 @@ public class AhudConfiguration implements Serializable {
 	 */
 	public void setAxisInital(int inital) {
 		mAxisInitial = inital;
+		mChanged = true;
 	}
 	
 	/**
@@ -145,6 +239,7 @@ public class AhudConfiguration implements Serializable {
 	 */
 	public void setAxisRestater(boolean restater) {
 		mAxisRestater = restater;
+		mChanged = true;
 	}
 	
 	/**
@@ -153,6 +248,7 @@ public class AhudConfiguration implements Serializable {
 	 */
 	public void setAxisWidth(int width) {
 		mAxisWidth = width;
+		mChanged = true;
 	}
 	
 	/**
@@ -161,6 +257,7 @@ public class AhudConfiguration implements Serializable {
 	 */
 	public void setHorizontalSpeed(int speed) {
 		mHorizontalSpeed = speed;
+		mChanged = true;
 	}
 
 	/**
@@ -169,6 +266,7 @@ public class AhudConfiguration implements Serializable {
 	 */
 	public void setVerticalSpeed(int speed) {
 		mVerticalSpeed = speed;
+		mChanged = true;
 	}
 	
 	/**
@@ -177,6 +275,7 @@ public class AhudConfiguration implements Serializable {
 	 */
 	public void setHorizontalStart(int start) {
 		mHorizontalStart = start;
+		mChanged = true;
 	}
 	
 	/**
@@ -185,6 +284,138 @@ public class AhudConfiguration implements Serializable {
 	 */
 	public void setVerticalStart(int start) {
 		mVerticalStart = start;
+		mChanged = true;
+	}
+	
+	/**
+	 * Set how the axis moves.
+	 * <p>
+	 * With {@link #MOTION_FRAME} the axis moves the speed in pixels on every drawn
+	 * frame, so the real speed depends on the refresh rate of the panel. With 
+	 * {@link #MOTION_CLOCK} the position is computed from the elapsed vsync time and
+	 * the speed is read as pixels per frame at {@link #REFERENCE_FRAME_RATE}, that
+	 * is <code>speed * 60</code> pixels per second on every panel. The frame clock
+	 * needs API 16, older devices fall back to frame steps.
+	 * @param mode 1 to frame steps, 2 to frame clock.
+	 */
+	public void setMotionMode(int mode) {
+		mMotionMode = mode;
+		mChanged = true;
+	}
+	
+	/**
+	 * Set how the axis is shown.
+	 * <p>
+	 * With {@link #RENDER_FULLSCREEN} the axis are drawn in a translucent window
+	 * over the whole screen. With {@link #RENDER_SPRITE} the window is only one
+	 * band wide and it is moved with the axis, so the content is not redrawn
+	 * and the compositor only blends the band. With {@link #RENDER_SURFACE} the
+	 * axis are drawn in a full screen surface from a render thread, so the work of
+	 * the app in the UI thread does not stop the axis.
+	 * @param mode 1 to full screen, 2 to sprite window, 3 to surface.
+	 */
+	public void setRenderMode(int mode) {
+		mRenderMode = mode;
+		mChanged = true;
+	}
+	
+	/**
+	 * Set if the overlay windows are kept across the crosses. By default the
+	 * windows are removed at each cross and added again after the click. Kept
+	 * windows only let the touches pass through while the click is injected.
+	 * @param kept True to keep the windows.
+	 */
+	public void setOverlayKept(boolean kept) {
+		mOverlayKept = kept;
+		mChanged = true;
+	}
+	
+	/**
+	 * Set if the axis and the touches share one window. By default the axis are
+	 * drawn in a window that lets the touches pass and an empty window on top
+	 * takes them. One window is one compositor layer and one window transaction
+	 * less at each show and hide. The time it saves is not measured, compare the
+	 * {@link AhudMetrics#getCreateDurations()} of both. The {@link #RENDER_SPRITE}
+	 * mode always uses two windows, its window only covers one band.
+	 * @param single True to use one window.
+	 */
+	public void setSingleWindow(boolean single) {
+		mSingleWindow = single;
+		mChanged = true;
+	}
+	
+	/**
+	 * Set when a touch selects.
+	 * <p>
+	 * With {@link #INPUT_CLICK} the axis stops when the click is delivered, after
+	 * the finger goes up. With {@link #INPUT_DOWN} the axis stops when the finger
+	 * goes down, at the position it had at the time of the touch minus the 
+	 * reaction time, so the press and the delivery do not move the selection.
+	 * @param mode 1 to click, 2 to finger down.
+	 */
+	public void setInputMode(int mode) {
+		mInputMode = mode;
+		mChanged = true;
+	}
+	
+	/**
+	 * Set the reaction time of the user, subtracted from the time of the touch
+	 * with {@link #INPUT_DOWN}. Up to about one second of history is kept.
+	 * @param millis The reaction time in milliseconds.
+	 */
+	public void setReactionTime(int millis) {
+		mReactionTime = millis;
+		mChanged = true;
+	}
+	
+	/**
+	 * Set the gesture injected at the cross. Each gesture is injected at once,
+	 * with all its points in one batch. With {@link #GESTURE_SWIPE} the first
+	 * cross only marks the start, the scan goes on and the swipe is injected 
+	 * at the second cross; the {@link AhudServiceConnection.OnCrossListener} 
+	 * is only called for the second one. A new gesture set with 
+	 * {@link AhudServiceConnection#setConfiguration(AhudConfiguration)} applies
+	 * from the next cross.
+	 * @param gesture 1 to tap, 2 to double tap, 3 to long press, 4 to swipe.
+	 */
+	public void setGesture(int gesture) {
+		mGesture = gesture;
+		mChanged = true;
+	}
+
+	/**
+	 * Set the default value to the modes that are not known. The versions
+	 * before the modes were added stored them as 0.
+	 */
+	/* package */ void normalize() {
+		if ( mMotionMode != MOTION_FRAME && mMotionMode != MOTION_CLOCK )
+			mMotionMode = DEFAULT_MOTION_MODE;
+		if ( mRenderMode < RENDER_FULLSCREEN || mRenderMode > RENDER_SURFACE )
+			mRenderMode = DEFAULT_RENDER_MODE;
+		if ( mInputMode != INPUT_CLICK && mInputMode != INPUT_DOWN )
+			mInputMode = DEFAULT_INPUT_MODE;
+		if ( mGesture < GESTURE_TAP || mGesture > GESTURE_SWIPE )
+			mGesture = DEFAULT_GESTURE;
+		if ( mReactionTime < 0 )
+			mReactionTime = DEFAULT_REACTION_TIME;
+	}
+	
+	/**
+	 * The serialization does not run the initializers of the fields, the 
+	 * ones missing in the stream are 0.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		normalize();
+	}
+
+	/**
+	 * Take an immutable copy of the current values, safe to share with other
+	 * threads. Later changes to this configuration do not change the copy.
+	 * @return The snapshot.
+	 */
+	public AhudConfigurationSnapshot snapshot() {
+		return new AhudConfigurationSnapshot.Builder(this).build();
 	}
 
 	@Override
@@ -194,7 +425,14 @@ public class AhudConfiguration implements Serializable {
 				+ ", mAxisWidth=" + mAxisWidth + ", mHorizontalSpeed="
 				+ mHorizontalSpeed + ", mVerticalSpeed=" + mVerticalSpeed
 				+ ", mHorizontalStart=" + mHorizontalStart
-				+ ", mVerticalStart=" + mVerticalStart + "]";
+				+ ", mVerticalStart=" + mVerticalStart
+				+ ", mMotionMode=" + mMotionMode
+				+ ", mRenderMode=" + mRenderMode
+				+ ", mOverlayKept=" + mOverlayKept
+				+ ", mSingleWindow=" + mSingleWindow
+				+ ", mInputMode=" + mInputMode
+				+ ", mReactionTime=" + mReactionTime
+				+ ", mGesture=" + mGesture + "]";
 	}
 	
 }
@@ -19,42 +19,243 @@
 
 package com.limbika.ahud;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.ObjectStreamException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.limbika.ahud.ConfigurationStore.Record;
 
 /**
  * Accessibility HUD configuration manager.
+ * <p>
+ * The configurations are read from the storage when they are first found,
+ * and a save only writes the ones added, removed or changed since the last one.
  */
 public class AhudConfigurationManager {
 
-	private SharedPreferences             	mPrefs;
-	private ArrayList<AhudConfiguration>	mConfigurations;
-	private static AhudConfigurationManager	sInstance = null;
+	private static final String				FILE_NAME = AHUD.PKG + ".configurations";
+	private static final String				LOG_NAME = AHUD.PKG + ".log";
+	private static final long				SAVE_DELAY = 200;	// ms, the saves in between are one write
+	private static final int				LOAD_ATTEMPTS = 2;
+	
+	private SharedPreferences             	mPrefs;		// Only the data of old versions
+	private ConfigurationStore				mStore;
+	private IOException						mLoadError;	// Not read, nothing is saved
+	// By id, in the order they were added; null until read from the store
+	private LinkedHashMap<Long, AhudConfiguration> mConfigurations = new LinkedHashMap<Long, AhudConfiguration>();
+	// Changes since the last save
+	private LinkedHashSet<Long>				mAdded = new LinkedHashSet<Long>();
+	private HashSet<Long>					mRemoved = new HashSet<Long>();
+	private static volatile AhudConfigurationManager sInstance = null;
+	private static FutureTask<AhudConfigurationManager> sLoader;	// Guarded by the class
+	private static boolean					sIsLoaderStarted;	// Guarded by the class
+	
+	// The writes, one at a time in the order of the saves
+	private final ScheduledThreadPoolExecutor mWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "AhudPersistence");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private FutureTask<Void>				mPendingWrite;		// Guarded by this
+	private ArrayList<Record>				mPendingRecords = new ArrayList<Record>();	// Guarded by this
 
-	@SuppressWarnings("unchecked")
 	private AhudConfigurationManager(Context context) {
+		AHUD.beginSection("AHUD:loadConfigurations");
 		mPrefs = context.getSharedPreferences(AHUD.PKG, Context.MODE_PRIVATE);
+		mStore = new ConfigurationStore(new File(context.getFilesDir(), LOG_NAME));
+		File file = new File(context.getFilesDir(), FILE_NAME);
+		for (int attempt = 1; ; attempt++) {
+			try {
+				load(file);
+				break;
+			} catch (IOException e) {
+				if ( isCorrupt(e) ) {
+					Log.e(AHUD.TAG, "The configurations are corrupt, the log is set aside", e);
+					// A new store with what could be read, else nothing would be saved
+					try {
+						mStore.reset(mConfigurations.values());
+					} catch (IOException e1) {
+						// The next save tries again
+						Log.e(AHUD.TAG, "The configuration log can not be created", e1);
+					}
+					break;
+				}
+				if ( attempt == LOAD_ATTEMPTS ) {
+					// The files stay as they are for the next start
+					Log.e(AHUD.TAG, "The configurations can not be read, they are not saved", e);
+					mLoadError = e;
+					break;
+				}
+				mConfigurations.clear();
+			}
+		}
+		AHUD.endSection();
+	}
+	
+	/**
+	 * Read the configurations from the store, or move them to the store from 
+	 * the formats of the old versions.
+	 */
+	private void load(File file) throws IOException {
+		if ( mStore.exists() ) {
+			mStore.open();
+			for (long id : mStore.getIds()) {
+				mConfigurations.put(id, null);
+			}
+		}
+		else if ( file.exists() ) {
+			migrate(file);
+		}
+		else if ( mPrefs.contains(AHUD.PKG) ) {
+			migrate();
+		}
+		else {
+			mStore.create(mConfigurations.values());
+		}
+	}
+	
+	/**
+	 * @return True if the stored data is wrong, reading it again would fail
+	 * again. The other errors of the storage can pass.
+	 */
+	private static boolean isCorrupt(IOException e) {
+		return e instanceof CorruptConfigurationException 
+				|| e instanceof EOFException
+				|| e instanceof ObjectStreamException;
+	}
+	
+	/**
+	 * Move the configurations of the file of the old versions, all in one 
+	 * block, to the store.
+	 */
+	private void migrate(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
 		try {
-			String s = mPrefs.getString(AHUD.PKG, Serializer.toString(new ArrayList<AhudConfiguration>()));
-			mConfigurations = (ArrayList<AhudConfiguration>) Serializer.fromString(s);
-		} catch (IOException e) {
-			e.printStackTrace();
+			index(ConfigurationCodec.read(in));
+		} finally {
+			in.close();
+		}
+		mStore.create(mConfigurations.values());
+		file.delete();
+	}
+	
+	/**
+	 * Move the configurations of the old versions, serialized in the 
+	 * preferences, to the store.
+	 */
+	@SuppressWarnings("unchecked")
+	private void migrate() throws IOException {
+		try {
+			index((ArrayList<AhudConfiguration>) Serializer.fromString(mPrefs.getString(AHUD.PKG, null)));
 		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+			throw new CorruptConfigurationException(e.toString());
+		}
+		mStore.create(mConfigurations.values());
+		mPrefs.edit().remove(AHUD.PKG).commit();
+	}
+	
+	/**
+	 * Index the loaded configurations. The old versions could store more
+	 * than one configuration with the same id, the last one was the newest,
+	 * and did not store the modes, they get the default ones.
+	 */
+	private void index(ArrayList<AhudConfiguration> configurations) {
+		for (AhudConfiguration conf : configurations) {
+			conf.normalize();
+			mConfigurations.remove(conf.getId());
+			mConfigurations.put(conf.getId(), conf);
 		}
 	}
 
 	/**
-	 * @param context The application context.
+	 * Get the manager, reading the configurations in this thread if they are
+	 * not read yet or waiting for {@link #preload(Context)}.
+	 * @param context A context, only its application context is kept.
 	 * @return The unique instace of {@link AhudConfigurationManager}.
 	 */
 	public static AhudConfigurationManager get(Context context) {
-		if ( sInstance == null )
-			sInstance = new AhudConfigurationManager(context);
-		return sInstance;
+		AhudConfigurationManager instance = sInstance;
+		if ( instance != null )
+			return instance;
+		FutureTask<AhudConfigurationManager> loader = getLoader(context, false);
+		// Nothing if the background thread already runs it
+		loader.run();
+		boolean interrupted = false;
+		try {
+			while ( true ) {
+				try {
+					return loader.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			if ( interrupted )
+				Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Start to read the configurations in a background thread, so a later 
+	 * {@link #get(Context)} does not wait. Call it early, for example from
+	 * <code>Application.onCreate()</code>.
+	 * @param context A context, only its application context is kept.
+	 * @return The manager when the configurations are read.
+	 */
+	public static Future<AhudConfigurationManager> preload(Context context) {
+		return getLoader(context, true);
+	}
+	
+	/**
+	 * @param context A context, only its application context is kept.
+	 * @param isBackground True to run the loader in a background thread.
+	 * @return The only loader of the manager.
+	 */
+	private static synchronized FutureTask<AhudConfigurationManager> getLoader(Context context, boolean isBackground) {
+		if ( sLoader == null ) {
+			Context application = context.getApplicationContext();
+			final Context appContext = application == null ? context : application;
+			sLoader = new FutureTask<AhudConfigurationManager>(new Callable<AhudConfigurationManager>() {
+				@Override
+				public AhudConfigurationManager call() {
+					sInstance = new AhudConfigurationManager(appContext);
+					return sInstance;
+				}
+			});
+		}
+		if ( isBackground && !sIsLoaderStarted && !sLoader.isDone() ) {
+			sIsLoaderStarted = true;
+			Thread thread = new Thread(sLoader, "AhudConfigurationLoader");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return sLoader;
 	}
 
 	/**
@@ -62,8 +263,9 @@ public class AhudConfigurationManager {
 	 */
 	public long[] getAllIds() {
 		long[] out = new long[mConfigurations.size()];
-		for (int i=0;i<out.length;i++) {
-			out[i] = mConfigurations.get(i).getId();
+		int i = 0;
+		for (Long id : mConfigurations.keySet()) {
+			out[i++] = id;
 		}
 		return out;
 	}
@@ -73,16 +275,23 @@ public class AhudConfigurationManager {
 	 * @return The configuration with given id.
 	 */
 	public AhudConfiguration findConfById(long id) {
-		for (AhudConfiguration conf : mConfigurations) {
-			if (conf.getId() == id) {
-				return conf;
+		AhudConfiguration conf = mConfigurations.get(id);
+		if ( conf == null && mConfigurations.containsKey(id) ) {
+			try {
+				conf = mStore.read(id);
+			} catch (IOException e) {
+				Log.e(AHUD.TAG, "The configuration " + id + " can not be read", e);
+				return null;
 			}
+			// Same key, the order does not change
+			mConfigurations.put(id, conf);
 		}
-		return null;
+		return conf;
 	}
 
 	/**
-	 * Add configuration.
+	 * Add configuration, replacing the one with the same id. It goes 
+	 * to the end of the list.
 	 * @param configuration The configuration.
 	 * @throws AhudConfigurationException 
 	 */
@@ -90,11 +299,10 @@ public class AhudConfigurationManager {
 		if ( configuration.getId() == -1 ) {
 			throw new AhudConfigurationException();
 		}
-		for ( int i=0;i<mConfigurations.size();i++ ) {
-			if ( mConfigurations.get(i).getId() == configuration.getId() )
-				mConfigurations.remove(configuration);
-		}
-		mConfigurations.add(configuration);
+		mConfigurations.remove(configuration.getId());
+		mConfigurations.put(configuration.getId(), configuration);
+		mAdded.remove(configuration.getId());
+		mAdded.add(configuration.getId());
 	}
 
 	/**
@@ -102,31 +310,148 @@ public class AhudConfigurationManager {
 	 * @param configuration The configuration.
 	 */
 	public void removeConfiguration(AhudConfiguration configuration) {
-		mConfigurations.remove(configuration);
+		if ( mConfigurations.get(configuration.getId()) == configuration )
+			removeConfiguration(configuration.getId());
 	}
 	
 	/**
-	 * Remove all configurations with the given id.
+	 * Remove the configuration with the given id.
 	 * @param id The id.
 	 */
 	public void removeConfiguration(long id)  {
-		ArrayList<AhudConfiguration> toRemove = new ArrayList<AhudConfiguration>();
-		for (AhudConfiguration conf : mConfigurations) {
-			if (conf.getId() == id)
-				toRemove.add(conf);
-		}
-		mConfigurations.removeAll(toRemove);
+		if ( !mConfigurations.containsKey(id) )
+			return;
+		mConfigurations.remove(id);
+		mAdded.remove(id);
+		mRemoved.add(id);
 	}
 
 	/**
-	 * Save the configuration list.
+	 * Save the changes of the configurations and wait until they are written. 
+	 * If they could not be written they are written with the next save.
+	 * Prefer {@link #saveAsync()} from the UI thread.
 	 */
 	public void save() {
+		Future<Void> write = scheduleWrite(0);
 		try {
-			mPrefs.edit().putString(AHUD.PKG, Serializer.toString(mConfigurations)).commit();
+			write.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Log.e(AHUD.TAG, "The configurations can not be saved", e.getCause());
+		}
+	}
+	
+	/**
+	 * Save the changes of the configurations in background. The changes are 
+	 * taken now and written a moment later, with the changes of the saves in 
+	 * between.
+	 * @return The end of the write. If the configurations could not be 
+	 * written it fails with the {@link IOException}, and they are written 
+	 * with the next save. If the stored configurations could not be read, 
+	 * nothing is written until the next start, so they are not replaced.
+	 */
+	public Future<Void> saveAsync() {
+		return scheduleWrite(SAVE_DELAY);
+	}
+	
+	/**
+	 * Take the changes since the last save. Only the read configurations
+	 * can have changed. If one can not be encoded nothing is taken, the 
+	 * changes stay for the next save.
+	 * @return The records of the changes, in order.
+	 */
+	private List<Record> takeChanges() throws IOException {
+		ArrayList<Record> records = new ArrayList<Record>();
+		ArrayList<AhudConfiguration> taken = new ArrayList<AhudConfiguration>();
+		for (Long id : mRemoved) {
+			records.add(ConfigurationStore.remove(id));
+		}
+		for (Map.Entry<Long, AhudConfiguration> entry : mConfigurations.entrySet()) {
+			AhudConfiguration conf = entry.getValue();
+			if ( conf != null && conf.mChanged && !mAdded.contains(entry.getKey()) ) {
+				records.add(ConfigurationStore.update(conf));
+				taken.add(conf);
+			}
+		}
+		for (Long id : mAdded) {
+			AhudConfiguration conf = mConfigurations.get(id);
+			records.add(ConfigurationStore.add(conf));
+			taken.add(conf);
+		}
+		for (AhudConfiguration conf : taken) {
+			conf.mChanged = false;
+		}
+		mRemoved.clear();
+		mAdded.clear();
+		return records;
+	}
+	
+	/**
+	 * Take the changes to write and schedule the write, or join the one that
+	 * is waiting. The records of a failed write are kept and written first 
+	 * by the next one.
+	 * @param delay The time to wait for more saves in milliseconds.
+	 * @return The write.
+	 */
+	private synchronized Future<Void> scheduleWrite(long delay) {
+		if ( mLoadError != null ) {
+			// Written over the store it could replace what was not read
+			return failed(mLoadError);
+		}
+		try {
+			mPendingRecords.addAll(takeChanges());
 		} catch (IOException e) {
-			e.printStackTrace();
+			return failed(e);
+		}
+		if ( mPendingWrite == null ) {
+			mPendingWrite = new FutureTask<Void>(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					ArrayList<Record> records;
+					synchronized (AhudConfigurationManager.this) {
+						records = mPendingRecords;
+						mPendingRecords = new ArrayList<Record>();
+						mPendingWrite = null;
+					}
+					AHUD.beginSection("AHUD:saveConfigurations");
+					try {
+						mStore.append(records);
+						return null;
+					} catch (IOException e) {
+						// Before the changes saved meanwhile, they are newer
+						synchronized (AhudConfigurationManager.this) {
+							records.addAll(mPendingRecords);
+							mPendingRecords = records;
+						}
+						throw e;
+					} finally {
+						AHUD.endSection();
+					}
+				}
+			});
+			mWriter.schedule(mPendingWrite, delay, TimeUnit.MILLISECONDS);
 		}
+		else if ( delay == 0 ) {
+			// Do not wait for the delay, the scheduled run does nothing then
+			mWriter.execute(mPendingWrite);
+		}
+		return mPendingWrite;
+	}
+	
+	/**
+	 * @param e The error.
+	 * @return A write that failed with the error.
+	 */
+	private static Future<Void> failed(final IOException e) {
+		FutureTask<Void> failed = new FutureTask<Void>(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				throw e;
+			}
+		});
+		failed.run();
+		return failed;
 	}
 	
 	/**
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import com.limbika.ahud.core.AxisScanner;
+
+/**
+ * Immutable copy of an {@link AhudConfiguration}, safe to share between threads.
+ * <p>
+ * The HUD publishes the last snapshot in one volatile reference and each renderer
+ * takes it at the start of a frame, so a new configuration can be set from any
+ * thread without locks in the frame path. The values used while drawing, like 
+ * the start sides, are resolved when the snapshot is built.
+ * Use {@link AhudConfiguration#snapshot()} or a {@link Builder}.
+ */
+public final class AhudConfigurationSnapshot {
+	
+	/**
+	 * Builder of {@link AhudConfigurationSnapshot}, with the defaults of 
+	 * {@link AhudConfiguration}. It is not thread-safe, the snapshots it 
+	 * builds are.
+	 */
+	public static final class Builder {
+		
+		private long	mId;
+		private boolean	mAxisRestater;
+		private int		mAxisInitial;
+		private int		mAxisWidth;
+		private int		mHorizontalSpeed;
+		private int		mVerticalSpeed;
+		private int		mHorizontalStart;
+		private int		mVerticalStart;
+		private int		mMotionMode;
+		private int		mRenderMode;
+		private boolean	mOverlayKept;
+		private boolean	mSingleWindow;
+		private int		mInputMode;
+		private int		mReactionTime;
+		private int		mGesture;
+		
+		/**
+		 * Start from the default configuration.
+		 */
+		public Builder() {
+			this(new AhudConfiguration());
+		}
+		
+		/**
+		 * Start from the current values of a configuration.
+		 * @param conf The configuration to copy.
+		 */
+		public Builder(AhudConfiguration conf) {
+			mId = conf.mId;
+			mAxisRestater = conf.mAxisRestater;
+			mAxisInitial = conf.mAxisInitial;
+			mAxisWidth = conf.mAxisWidth;
+			mHorizontalSpeed = conf.mHorizontalSpeed;
+			mVerticalSpeed = conf.mVerticalSpeed;
+			mHorizontalStart = conf.mHorizontalStart;
+			mVerticalStart = conf.mVerticalStart;
+			mMotionMode = conf.mMotionMode;
+			mRenderMode = conf.mRenderMode;
+			mOverlayKept = conf.mOverlayKept;
+			mSingleWindow = conf.mSingleWindow;
+			mInputMode = conf.mInputMode;
+			mReactionTime = conf.mReactionTime;
+			mGesture = conf.mGesture;
+		}
+		
+		/**
+		 * Start from the values of a snapshot.
+		 * @param snapshot The snapshot to copy.
+		 */
+		public Builder(AhudConfigurationSnapshot snapshot) {
+			mId = snapshot.mId;
+			mAxisRestater = snapshot.mAxisRestater;
+			mAxisInitial = snapshot.mAxisInitial;
+			mAxisWidth = snapshot.mAxisWidth;
+			mHorizontalSpeed = snapshot.mHorizontalSpeed;
+			mVerticalSpeed = snapshot.mVerticalSpeed;
+			mHorizontalStart = snapshot.mHorizontalStart;
+			mVerticalStart = snapshot.mVerticalStart;
+			mMotionMode = snapshot.mMotionMode;
+			mRenderMode = snapshot.mRenderMode;
+			mOverlayKept = snapshot.mOverlayKept;
+			mSingleWindow = snapshot.mSingleWindow;
+			mInputMode = snapshot.mInputMode;
+			mReactionTime = snapshot.mReactionTime;
+			mGesture = snapshot.mGesture;
+		}
+		
+		/** @see AhudConfiguration#setId(long) */
+		public Builder setId(long id) {
+			mId = id;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setAxisRestater(boolean) */
+		public Builder setAxisRestater(boolean restater) {
+			mAxisRestater = restater;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setAxisInital(int) */
+		public Builder setAxisInital(int inital) {
+			mAxisInitial = inital;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setAxisWidth(int) */
+		public Builder setAxisWidth(int width) {
+			mAxisWidth = width;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setHorizontalSpeed(int) */
+		public Builder setHorizontalSpeed(int speed) {
+			mHorizontalSpeed = speed;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setVerticalSpeed(int) */
+		public Builder setVerticalSpeed(int speed) {
+			mVerticalSpeed = speed;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setHorizontalStart(int) */
+		public Builder setHorizontalStart(int start) {
+			mHorizontalStart = start;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setVerticalStart(int) */
+		public Builder setVerticalStart(int start) {
+			mVerticalStart = start;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setMotionMode(int) */
+		public Builder setMotionMode(int mode) {
+			mMotionMode = mode;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setRenderMode(int) */
+		public Builder setRenderMode(int mode) {
+			mRenderMode = mode;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setOverlayKept(boolean) */
+		public Builder setOverlayKept(boolean kept) {
+			mOverlayKept = kept;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setSingleWindow(boolean) */
+		public Builder setSingleWindow(boolean single) {
+			mSingleWindow = single;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setInputMode(int) */
+		public Builder setInputMode(int mode) {
+			mInputMode = mode;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setReactionTime(int) */
+		public Builder setReactionTime(int millis) {
+			mReactionTime = millis;
+			return this;
+		}
+		
+		/** @see AhudConfiguration#setGesture(int) */
+		public Builder setGesture(int gesture) {
+			mGesture = gesture;
+			return this;
+		}
+		
+		/**
+		 * @return A new snapshot with the values of the builder.
+		 */
+		public AhudConfigurationSnapshot build() {
+			return new AhudConfigurationSnapshot(this);
+		}
+	}
+	
+	//-------------------------------------------------------------------------
+	// Members, final so they are visible to every thread once published
+	/* package */ final long	mId;
+	/* package */ final boolean	mAxisRestater;
+	/* package */ final int		mAxisInitial;
+	/* package */ final int		mAxisWidth;
+	/* package */ final int		mHorizontalSpeed;
+	/* package */ final int		mVerticalSpeed;
+	/* package */ final int		mHorizontalStart;
+	/* package */ final int		mVerticalStart;
+	/* package */ final int		mMotionMode;
+	/* package */ final int		mRenderMode;
+	/* package */ final boolean	mOverlayKept;
+	/* package */ final boolean	mSingleWindow;
+	/* package */ final int		mInputMode;
+	/* package */ final int		mReactionTime;
+	/* package */ final int		mGesture;
+	
+	// Resolved for the renderers
+	/* package */ final boolean	mIsStartFromRight;
+	/* package */ final boolean	mIsStartFromBottom;
+	/* package */ final boolean	mIsSingleWindow;	// Never with sprites
+	
+	private AhudConfigurationSnapshot(Builder builder) {
+		mId = builder.mId;
+		mAxisRestater = builder.mAxisRestater;
+		mAxisInitial = builder.mAxisInitial;
+		mAxisWidth = builder.mAxisWidth;
+		mHorizontalSpeed = builder.mHorizontalSpeed;
+		mVerticalSpeed = builder.mVerticalSpeed;
+		mHorizontalStart = builder.mHorizontalStart;
+		mVerticalStart = builder.mVerticalStart;
+		mMotionMode = builder.mMotionMode;
+		mRenderMode = builder.mRenderMode;
+		mOverlayKept = builder.mOverlayKept;
+		mSingleWindow = builder.mSingleWindow;
+		mInputMode = builder.mInputMode;
+		mReactionTime = builder.mReactionTime;
+		mGesture = builder.mGesture;
+		
+		mIsStartFromRight = mVerticalStart != AhudConfiguration.START_LEFT;
+		mIsStartFromBottom = mHorizontalStart != AhudConfiguration.START_TOP;
+		mIsSingleWindow = mSingleWindow && mRenderMode != AhudConfiguration.RENDER_SPRITE;
+	}
+	
+	/**
+	 * @return A builder with the values of this snapshot.
+	 */
+	public Builder buildUpon() {
+		return new Builder(this);
+	}
+	
+	/**
+	 * @return A new mutable configuration with the values of this snapshot.
+	 */
+	public AhudConfiguration toConfiguration() {
+		AhudConfiguration conf = new AhudConfiguration();
+		conf.mId = mId;
+		conf.mAxisRestater = mAxisRestater;
+		conf.mAxisInitial = mAxisInitial;
+		conf.mAxisWidth = mAxisWidth;
+		conf.mHorizontalSpeed = mHorizontalSpeed;
+		conf.mVerticalSpeed = mVerticalSpeed;
+		conf.mHorizontalStart = mHorizontalStart;
+		conf.mVerticalStart = mVerticalStart;
+		conf.mMotionMode = mMotionMode;
+		conf.mRenderMode = mRenderMode;
+		conf.mOverlayKept = mOverlayKept;
+		conf.mSingleWindow = mSingleWindow;
+		conf.mInputMode = mInputMode;
+		conf.mReactionTime = mReactionTime;
+		conf.mGesture = mGesture;
+		return conf;
+	}
+	
+	/** @see AhudConfiguration#getId() */
+	public long getId() {
+		return mId;
+	}
+	
+	/** @see AhudConfiguration#isAxisRestater() */
+	public boolean isAxisRestater() {
+		return mAxisRestater;
+	}
+	
+	/** @see AhudConfiguration#getAxisInital() */
+	public int getAxisInital() {
+		return mAxisInitial;
+	}
+	
+	/** @see AhudConfiguration#getAxisWidth() */
+	public int getAxisWidth() {
+		return mAxisWidth;
+	}
+	
+	/** @see AhudConfiguration#getHorizontalSpeed() */
+	public int getHorizontalSpeed() {
+		return mHorizontalSpeed;
+	}
+	
+	/** @see AhudConfiguration#getVerticalSpeed() */
+	public int getVerticalSpeed() {
+		return mVerticalSpeed;
+	}
+	
+	/** @see AhudConfiguration#getHorizontalStart() */
+	public int getHorizontalStart() {
+		return mHorizontalStart;
+	}
+	
+	/** @see AhudConfiguration#getVerticalStart() */
+	public int getVerticalStart() {
+		return mVerticalStart;
+	}
+	
+	/** @see AhudConfiguration#getMotionMode() */
+	public int getMotionMode() {
+		return mMotionMode;
+	}
+	
+	/** @see AhudConfiguration#getRenderMode() */
+	public int getRenderMode() {
+		return mRenderMode;
+	}
+	
+	/** @see AhudConfiguration#isOverlayKept() */
+	public boolean isOverlayKept() {
+		return mOverlayKept;
+	}
+	
+	/** @see AhudConfiguration#isSingleWindow() */
+	public boolean isSingleWindow() {
+		return mSingleWindow;
+	}
+	
+	/** @see AhudConfiguration#getInputMode() */
+	public int getInputMode() {
+		return mInputMode;
+	}
+	
+	/** @see AhudConfiguration#getReactionTime() */
+	public int getReactionTime() {
+		return mReactionTime;
+	}
+	
+	/** @see AhudConfiguration#getGesture() */
+	public int getGesture() {
+		return mGesture;
+	}
+	
+	/**
+	 * Creates a scanning engine with this configuration.
+	 * @param preState The state of the last cross, or null.
+	 * @return The scanner.
+	 */
+	/* package */ AxisScanner createScanner(PreState preState) {
+		AxisScanner scanner = new AxisScanner(mAxisInitial, mHorizontalSpeed, mVerticalSpeed);
+		restartScanner(scanner, preState);
+		return scanner;
+	}
+	
+	/**
+	 * Start a new scan with this configuration. The positions at the far edge 
+	 * are resolved at the next field size.
+	 * @param scanner The scanner created by {@link #createScanner(PreState)}.
+	 * @param preState The state of the last cross, or null.
+	 */
+	/* package */ void restartScanner(AxisScanner scanner, PreState preState) {
+		scanner.reset();
+		if ( mAxisRestater && preState != null ) {
+			scanner.restore(preState.positionX, preState.positionY, preState.directionX, preState.directionY);
+		}
+		else {
+			scanner.setStart(mIsStartFromRight, mIsStartFromBottom);
+		}
+	}
+
+	/**
+	 * Apply this configuration to a running scanner. The speeds apply from the
+	 * next frame. A new initial axis or start restarts the scan if the first 
+	 * axis is moving, otherwise they apply from the next scan.
+	 * @param scanner The scanner created by {@link #createScanner(PreState)}.
+	 * @return True if the scan restarted, the positions at the far edge are 
+	 * resolved at the next field size.
+	 */
+	/* package */ boolean updateScanner(AxisScanner scanner) {
+		scanner.setSpeeds(mHorizontalSpeed, mVerticalSpeed);
+		boolean isNewStart = scanner.getInitialAxis() != mAxisInitial
+				|| scanner.isStartFromRight() != mIsStartFromRight
+				|| scanner.isStartFromBottom() != mIsStartFromBottom;
+		scanner.setInitialAxis(mAxisInitial);
+		if ( isNewStart && scanner.getState() == AxisScanner.STATE_FIRST_LINE ) {
+			scanner.reset();
+			scanner.setStart(mIsStartFromRight, mIsStartFromBottom);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "AhudConfigurationSnapshot [mId=" + mId + ", mAxisRestater="
+				+ mAxisRestater + ", mAxisInitial=" + mAxisInitial
+				+ ", mAxisWidth=" + mAxisWidth + ", mHorizontalSpeed="
+				+ mHorizontalSpeed + ", mVerticalSpeed=" + mVerticalSpeed
+				+ ", mHorizontalStart=" + mHorizontalStart
+				+ ", mVerticalStart=" + mVerticalStart
+				+ ", mMotionMode=" + mMotionMode
+				+ ", mRenderMode=" + mRenderMode
+				+ ", mOverlayKept=" + mOverlayKept
+				+ ", mSingleWindow=" + mSingleWindow
+				+ ", mInputMode=" + mInputMode
+				+ ", mReactionTime=" + mReactionTime
+				+ ", mGesture=" + mGesture + "]";
+	}
+	
+}
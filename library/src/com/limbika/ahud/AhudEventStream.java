@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.limbika.ahud.core.AxisScanner;
+
+/**
+ * Continuous feed of the HUD for consumers in the same process: the position
+ * of the axis at each frame, the changes of state and the results of the 
+ * injections.
+ * <p>
+ * The events are kept in a ring of preallocated slots of primitives, written
+ * by the render and main threads without locks nor allocations. Each consumer
+ * polls with its own {@link Reader} at its own pace. The ring does not wait 
+ * for the consumers: a reader that falls more than the capacity behind loses
+ * the oldest events, and {@link Reader#getLost()} counts them.
+ */
+public final class AhudEventStream {
+	
+	//-------------------------------------------------------------------------
+	// Public constants
+	/** Position of the axis at a frame, the state is the argument */
+	public static final int		TYPE_POSITION		= 1;
+	/** New state of the scan, the state is the argument */
+	public static final int		TYPE_STATE			= 2;
+	/** End of an injection at the cross, the {@link Injector} result is the argument */
+	public static final int		TYPE_INJECTION		= 3;
+	/** The first axis moves */
+	public static final int		STATE_FIRST_LINE	= AxisScanner.STATE_FIRST_LINE;
+	/** The second axis moves */
+	public static final int		STATE_SECOND_LINE	= AxisScanner.STATE_SECOND_LINE;
+	/** The axis are crossed */
+	public static final int		STATE_CROSS			= AxisScanner.STATE_CROSS;
+	/** The axis are paused */
+	public static final int		STATE_PAUSE			= AxisScanner.STATE_PAUSE;
+	/** The injection completed */
+	public static final int		RESULT_COMPLETED	= Injector.RESULT_COMPLETED;
+	/** The injection was cancelled */
+	public static final int		RESULT_CANCELLED	= Injector.RESULT_CANCELLED;
+	
+	//-------------------------------------------------------------------------
+	// Constants
+	/* package */ static final int	DEFAULT_CAPACITY	= 1024;	// About 17 s of frames at 60 Hz
+	// Slot layout, in longs
+	private static final int	SLOT_SEQUENCE		= 0;	// Sequence of the event, -1 while written
+	private static final int	SLOT_TIME			= 1;
+	private static final int	SLOT_TYPE_ARG		= 2;	// Type in the high half, argument in the low half
+	private static final int	SLOT_POSITION		= 3;	// Bits of x in the high half, of y in the low half
+	private static final int	SLOT_SIZE			= 4;
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final AtomicLongArray	mSlots;
+	private final int				mMask;
+	private final AtomicLong		mNext			= new AtomicLong();	// Sequence of the next event
+	
+	/**
+	 * @param capacity The number of events kept, rounded up to a power of two.
+	 */
+	/* package */ AhudEventStream(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mMask = size - 1;
+		mSlots = new AtomicLongArray(size * SLOT_SIZE);
+		for (int i = 0; i < size; i++)
+			mSlots.set(i * SLOT_SIZE + SLOT_SEQUENCE, -1L);
+	}
+	
+	/**
+	 * @return The number of events kept.
+	 */
+	public int getCapacity() {
+		return mMask + 1;
+	}
+	
+	/**
+	 * Create a reader from the next event.
+	 * @return The reader, for one consumer thread.
+	 */
+	public Reader newReader() {
+		return new Reader(mNext.get());
+	}
+	
+	/**
+	 * Add an event. It does not block nor allocate. The slot is marked while
+	 * it is written, so a reader never takes half an event.
+	 * @param type The type of the event.
+	 * @param timeNanos The time of the event, in the time base of {@link System#nanoTime()}.
+	 * @param x The abscissa of the axis.
+	 * @param y The ordinate of the axis.
+	 * @param arg The argument of the type.
+	 */
+	/* package */ void publish(int type, long timeNanos, float x, float y, int arg) {
+		// The render thread and the main thread both write, each one takes its slot
+		long sequence = mNext.getAndIncrement();
+		int slot = (int) (sequence & mMask) * SLOT_SIZE;
+		mSlots.lazySet(slot + SLOT_SEQUENCE, -1L);
+		mSlots.lazySet(slot + SLOT_TIME, timeNanos);
+		mSlots.lazySet(slot + SLOT_TYPE_ARG, ((long) type << 32) | (arg & 0xFFFFFFFFL));
+		mSlots.lazySet(slot + SLOT_POSITION, 
+				((long) Float.floatToRawIntBits(x) << 32) | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL));
+		mSlots.lazySet(slot + SLOT_SEQUENCE, sequence);
+	}
+	
+	/**
+	 * Add the state of a scanner.
+	 * @param type {@link #TYPE_POSITION} or {@link #TYPE_STATE}.
+	 * @param timeNanos The time of the event.
+	 * @param scanner The scanner.
+	 */
+	/* package */ void publish(int type, long timeNanos, AxisScanner scanner) {
+		publish(type, timeNanos, scanner.getVerticalPosition(), scanner.getHorizontalPosition(), 
+				scanner.getState());
+	}
+	
+	/**
+	 * Cursor of one consumer in the stream. It is not thread-safe, each 
+	 * consumer thread has its own reader. The values of the current event
+	 * do not change until the next call to {@link #next()}.
+	 */
+	public final class Reader {
+		
+		private long	mSequence;		// Sequence of the next event to read
+		private long	mLost;
+		private int		mType;
+		private int		mArg;
+		private long	mTime;
+		private float	mX;
+		private float	mY;
+		
+		private Reader(long sequence) {
+			mSequence = sequence;
+		}
+		
+		/**
+		 * Move to the next event, if there is one. It does not block nor allocate.
+		 * @return True if there is a new current event, false if the reader is
+		 * at the end of the stream.
+		 */
+		public boolean next() {
+			while ( true ) {
+				int slot = (int) (mSequence & mMask) * SLOT_SIZE;
+				long sequence = mSlots.get(slot + SLOT_SEQUENCE);
+				if ( sequence == mSequence ) {
+					long time = mSlots.get(slot + SLOT_TIME);
+					long typeArg = mSlots.get(slot + SLOT_TYPE_ARG);
+					long position = mSlots.get(slot + SLOT_POSITION);
+					if ( mSlots.get(slot + SLOT_SEQUENCE) == sequence ) {
+						mTime = time;
+						mType = (int) (typeArg >> 32);
+						mArg = (int) typeArg;
+						mX = Float.intBitsToFloat((int) (position >> 32));
+						mY = Float.intBitsToFloat((int) position);
+						mSequence++;
+						return true;
+					}
+				}
+				else if ( sequence < mSequence && mNext.get() - mSequence <= mMask + 1 ) {
+					// Not written yet, or being written
+					return false;
+				}
+				// Overwritten, before or while it was read, go on from the oldest event kept
+				long oldest = mNext.get() - (mMask + 1);
+				if ( oldest > mSequence ) {
+					mLost += oldest - mSequence;
+					mSequence = oldest;
+				}
+			}
+		}
+		
+		/**
+		 * @return The type of the current event.
+		 */
+		public int getType() {
+			return mType;
+		}
+		
+		/**
+		 * @return The time of the current event, in the time base of {@link System#nanoTime()}.
+		 */
+		public long getTime() {
+			return mTime;
+		}
+		
+		/**
+		 * @return The abscissa of the axis in the current event, in pixels.
+		 */
+		public float getX() {
+			return mX;
+		}
+		
+		/**
+		 * @return The ordinate of the axis in the current event, in pixels.
+		 */
+		public float getY() {
+			return mY;
+		}
+		
+		/**
+		 * @return The argument of the current event: the state for 
+		 * {@link #TYPE_POSITION} and {@link #TYPE_STATE}, the result for 
+		 * {@link #TYPE_INJECTION}.
+		 */
+		public int getArg() {
+			return mArg;
+		}
+		
+		/**
+		 * @return The number of events overwritten before this reader took them.
+		 */
+		public long getLost() {
+			return mLost;
+		}
+	}
+
+}
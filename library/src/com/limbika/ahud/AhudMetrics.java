@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.DisplayManager.DisplayListener;
+import android.os.Build;
+import android.os.Handler;
+import android.view.Display;
+import android.view.WindowManager;
+
+/**
+ * Performance metrics of the HUD, taken with {@link AhudServiceConnection#getMetrics()}.
+ * <p>
+ * The durations are in microseconds. The HUD records in its own instance, 
+ * without allocations nor locks; the instances given to the callers are 
+ * snapshots.
+ */
+public final class AhudMetrics {
+	
+	//-------------------------------------------------------------------------
+	// Constants
+	private static final long	DEFAULT_FRAME_PERIOD = 1000000000L / 60;	// ns
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final Histogram		mFrameIntervals		= new Histogram();
+	private final Histogram		mCreateDurations	= new Histogram();
+	private final Histogram		mDestroyDurations	= new Histogram();
+	private final Histogram		mCrossToInjection	= new Histogram();
+	private final Histogram		mInjectionToRestored = new Histogram();
+	private final AtomicLong	mDroppedFrames		= new AtomicLong();
+	private final AtomicLong	mDroppedCrosses		= new AtomicLong();
+	private volatile long		mFramePeriod		= DEFAULT_FRAME_PERIOD;	// ns
+	private DisplayWatcher		mDisplayWatcher;
+	
+	/* package */ AhudMetrics() {}
+	
+	/**
+	 * @return The time between the drawn frames of the axis.
+	 */
+	public Histogram getFrameIntervals() {
+		return mFrameIntervals;
+	}
+	
+	/**
+	 * @return The frames missed between the drawn frames of the axis.
+	 */
+	public long getDroppedFrames() {
+		return mDroppedFrames.get();
+	}
+	
+	/**
+	 * @return The crosses dropped because the listener of an executor was late.
+	 */
+	public long getDroppedCrosses() {
+		return mDroppedCrosses.get();
+	}
+	
+	/**
+	 * @return The time to add the overlay windows, or to show the kept ones.
+	 */
+	public Histogram getCreateDurations() {
+		return mCreateDurations;
+	}
+	
+	/**
+	 * @return The time to remove the overlay windows, or to hide the kept ones.
+	 */
+	public Histogram getDestroyDurations() {
+		return mDestroyDurations;
+	}
+	
+	/**
+	 * @return The time from the cross to the end of the injected gesture.
+	 */
+	public Histogram getCrossToInjection() {
+		return mCrossToInjection;
+	}
+	
+	/**
+	 * @return The time from the end of the injected gesture to the HUD scanning again.
+	 */
+	public Histogram getInjectionToRestored() {
+		return mInjectionToRestored;
+	}
+	
+	/**
+	 * Record the time between two drawn frames.
+	 * @param intervalNanos The time since the last drawn frame.
+	 */
+	/* package */ void recordFrame(long intervalNanos) {
+		mFrameIntervals.recordNanos(intervalNanos);
+		long framePeriod = mFramePeriod;
+		// Half a period of jitter still counts as the next frame
+		long dropped = (intervalNanos + framePeriod / 2) / framePeriod - 1;
+		if ( dropped > 0 )
+			mDroppedFrames.addAndGet(dropped);
+	}
+	
+	/**
+	 * Count one cross dropped before its listener got it.
+	 */
+	/* package */ void recordDroppedCross() {
+		mDroppedCrosses.incrementAndGet();
+	}
+	
+	/**
+	 * Read the refresh period of the display and, from Android 4.2, read it 
+	 * again when the display changes its refresh rate. Call it from the main 
+	 * thread.
+	 * @param context The context of the service.
+	 */
+	/* package */ void startFramePeriod(Context context) {
+		WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+		updateFramePeriod(wm.getDefaultDisplay());
+		if ( mDisplayWatcher == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ) {
+			mDisplayWatcher = new DisplayWatcher(context);
+		}
+	}
+	
+	/**
+	 * Stop reading the refresh period when the display changes.
+	 */
+	/* package */ void stopFramePeriod() {
+		if ( mDisplayWatcher != null ) {
+			mDisplayWatcher.stop();
+			mDisplayWatcher = null;
+		}
+	}
+	
+	private void updateFramePeriod(Display display) {
+		float rate = display == null ? 0 : display.getRefreshRate();
+		mFramePeriod = rate > 0 ? (long) (1000000000L / rate) : DEFAULT_FRAME_PERIOD;
+	}
+	
+	/**
+	 * Reads the refresh period again when the default display changes. Only
+	 * loaded from Android 4.2, the listener does not exist before.
+	 */
+	private class DisplayWatcher implements DisplayListener {
+		private final DisplayManager mDisplayManager;
+		
+		DisplayWatcher(Context context) {
+			mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+			mDisplayManager.registerDisplayListener(this, new Handler());
+		}
+		
+		void stop() {
+			mDisplayManager.unregisterDisplayListener(this);
+		}
+
+		@Override
+		public void onDisplayChanged(int displayId) {
+			if ( displayId == Display.DEFAULT_DISPLAY )
+				updateFramePeriod(mDisplayManager.getDisplay(displayId));
+		}
+
+		@Override
+		public void onDisplayAdded(int displayId) {}
+
+		@Override
+		public void onDisplayRemoved(int displayId) {}
+	}
+	
+	/**
+	 * @return A copy of the metrics.
+	 */
+	/* package */ AhudMetrics snapshot() {
+		return new AhudMetrics(this);
+	}
+	
+	private AhudMetrics(AhudMetrics metrics) {
+		mFrameIntervals.copyFrom(metrics.mFrameIntervals);
+		mDroppedFrames.set(metrics.mDroppedFrames.get());
+		mDroppedCrosses.set(metrics.mDroppedCrosses.get());
+		mFramePeriod = metrics.mFramePeriod;
+		mCreateDurations.copyFrom(metrics.mCreateDurations);
+		mDestroyDurations.copyFrom(metrics.mDestroyDurations);
+		mCrossToInjection.copyFrom(metrics.mCrossToInjection);
+		mInjectionToRestored.copyFrom(metrics.mInjectionToRestored);
+	}
+
+	@Override
+	public String toString() {
+		return "AhudMetrics [frameIntervals=" + mFrameIntervals
+				+ ", droppedFrames=" + mDroppedFrames
+				+ ", droppedCrosses=" + mDroppedCrosses
+				+ ", createDurations=" + mCreateDurations
+				+ ", destroyDurations=" + mDestroyDurations
+				+ ", crossToInjection=" + mCrossToInjection
+				+ ", injectionToRestored=" + mInjectionToRestored + "]";
+	}
+	
+}
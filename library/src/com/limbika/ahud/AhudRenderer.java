@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import android.view.View;
+
+/**
+ * Renderer of the Accessibility HUD Axis.
+ * <p>
+ * {@link AhudView} draws in the UI thread and it is the default,
+ * {@link AhudSurfaceView} draws in its own render thread.
+ * <p>
+ * The renderers read the configuration from a reference shared with the 
+ * service and take the last snapshot at the start of each frame and of each 
+ * scan, in their own thread. A new snapshot applies the speeds, the width, the
+ * initial axis and the start in the same window; the render and motion modes
+ * apply to the next renderer.
+ */
+/* package */ interface AhudRenderer {
+
+	/**
+	 * @return The view to add to the window.
+	 */
+	public View getView();
+
+	/**
+	 * Go to next state, usually after a click.
+	 * @return True if the axis are crossed.
+	 */
+	public boolean click();
+	
+	/**
+	 * Go to next state with the moving axis where it was at the given time.
+	 * @param timeNanos The time of the selection, in the time base of {@link System#nanoTime()}.
+	 * @return True if the axis are crossed.
+	 */
+	public boolean click(long timeNanos);
+
+	/**
+	 * Start again from the first axis.
+	 */
+	public void reset();
+
+	/**
+	 * Start a new scan after a cross, like a new renderer.
+	 * @param preState The state of the last cross, or null.
+	 */
+	public void restart(PreState preState);
+	
+	/**
+	 * Pause the HUD.
+	 */
+	public void pause();
+
+	/**
+	 * @return The X coordeante.
+	 */
+	public int getXCoordenate();
+
+	/**
+	 * @return The Y coordenate.
+	 */
+	public int getYCoordenate();
+
+	public int getXDirection();
+
+	public int getYDirection();
+
+	public void setColor(int color);
+
+}
@@ -19,20 +19,24 @@
 
 package com.limbika.ahud;
 
-import android.app.Instrumentation;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.accessibilityservice.AccessibilityService;
 import android.app.Service;
 import android.content.Intent;
 import android.graphics.PixelFormat;
 import android.os.Binder;
+import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.Message;
-import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.View.OnLongClickListener;
+import android.view.View.OnTouchListener;
 import android.view.WindowManager;
 import android.view.WindowManager.LayoutParams;
 
@@ -42,8 +46,13 @@ import com.limbika.ahud.AhudServiceConnection.OnCrossListener;
  * Limbika Accessibility HUD Service.
  * <p>
  * Not use directly. Use {@link AhudServiceConnection} instead.
+ * <p>
+ * The state of the HUD is only changed by one event loop in the main thread.
+ * The calls of the connection, the touches and the end of the injections are
+ * messages for the loop, handled one by one in the order they arrive, so they
+ * can come from any thread.
  */
-public class AhudService extends Service implements OnClickListener {
+public class AhudService extends Service implements OnClickListener, OnTouchListener {
 	
 	class AHUDBinder extends Binder {
 		public AhudService getService() {
@@ -52,33 +61,75 @@ public class AhudService extends Service implements OnClickListener {
 	}
 	
 	//-------------------------------------------------------------------------
-	// Members
-	private boolean mIsFinishing = false;
-	private AhudConfiguration mConfiguration;
-	private AhudView mAhudView;
+	// Constants
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	//-------------------------------------------------------------------------
+	// Messages of the event loop
+	private static final int MSG_SHOW				= 1;	// Add or show the overlay
+	private static final int MSG_HIDE				= 2;	// Remove the overlay
+	private static final int MSG_SELECT				= 3;	// Touch, time in arg1 and arg2
+	private static final int MSG_INJECTED			= 4;	// From the Injector
+	private static final int MSG_CONFIG				= 5;	// AhudConfigurationSnapshot in obj
+	private static final int MSG_CROSS_LISTENER		= 6;	// OnCrossListener in obj
+	private static final int MSG_LONG_CLICK_LISTENER = 7;	// OnLongClickListener in obj
+	private static final int MSG_INJECTOR			= 8;	// AccessibilityService in obj
+	private static final int MSG_FINISH				= 9;	// Unbound
+	private static final int MSG_BIND				= 10;	// Bound again
+	
+	//-------------------------------------------------------------------------
+	// Members, only used from the event loop but the configuration
+	private boolean mIsFinishing = false;	// Unbound, a click in progress does not restore the overlay
+	// Set by the loop, read by the renderer at each frame
+	private final AtomicReference<AhudConfigurationSnapshot> mConfiguration = 
+			new AtomicReference<AhudConfigurationSnapshot>(new AhudConfigurationSnapshot.Builder().build());
+	private AhudRenderer mRenderer;
 	private PreState mPreState;
 	private ListenerView mListenerView;
+	private View mTouchView;			// The window that takes the touches
+	private LayoutParams mTouchParams;
+	private boolean mIsOverlayHidden = false;
+	private long mCrossTime;			// ns
+	private long mInjectedTime;			// ns
+	private int mCrossCookie;			// Async trace section of the cross
+	private final AhudMetrics mMetrics = new AhudMetrics();
+	private final AhudEventStream mEvents = new AhudEventStream(AhudEventStream.DEFAULT_CAPACITY);
+	private boolean mHasSwipeStart = false;
+	private int mSwipeStartX;
+	private int mSwipeStartY;
 	private OnCrossListener mCrossListener;
 	private OnLongClickListener mLongClickListener;
 	private IBinder	mBinder = new AHUDBinder();
+	private Injector mInjector;
 	
 	@Override
 	public void onCreate() {
 		AHUD.debug("TRACE: onCreate()");
 		super.onCreate();
+		mInjector = createInjector(null);
+		mMetrics.startFramePeriod(this);
 	}
 	
 	@Override
 	public IBinder onBind(Intent intent) {
+		mLoop.sendEmptyMessage(MSG_BIND);
 		return mBinder;
 	}
+	
+	@Override
+	public void onRebind(Intent intent) {
+		AHUD.debug("TRACE: onRebind()");
+		super.onRebind(intent);
+		mLoop.sendEmptyMessage(MSG_BIND);
+	}
 
 	@Override
 	public boolean onUnbind(Intent intent) {
 		AHUD.debug("TRACE: onUnbind()");
-		mIsFinishing = true;
-		destroyOverlayView();
-		return super.onUnbind(intent);
+		// After the messages already sent, a cross in progress is not restored
+		mLoop.sendEmptyMessage(MSG_FINISH);
+		// A started service can be bound again, onRebind() takes it back
+		return true;
 	}
 
 	@Override
@@ -92,48 +143,206 @@ public class AhudService extends Service implements OnClickListener {
 	public void onDestroy() {
 		AHUD.debug("TRACE: onDestroy()");
 		super.onDestroy();
-		destroyOverlayView();
+		// The windows can not outlive the service, drop the pending messages
+		mLoop.removeCallbacksAndMessages(null);
+		mIsFinishing = true;
+		removeOverlayView();
+		mInjector.quit();
+		mMetrics.stopFramePeriod();
 	}
 	
 	@Override
 	public void onClick(View v) {
-		if ( mAhudView.click() ) {
-			int x = mAhudView.getXCoordenate();
-			int y = mAhudView.getYCoordenate();
+		// Any mode that is not the down one selects with the click
+		if ( mConfiguration.get().mInputMode != AhudConfiguration.INPUT_DOWN )
+			sendSelect(0);
+	}
+	
+	@Override
+	public boolean onTouch(View v, MotionEvent event) {
+		AhudConfigurationSnapshot conf = mConfiguration.get();
+		if ( event.getActionMasked() == MotionEvent.ACTION_DOWN 
+				&& conf.mInputMode == AhudConfiguration.INPUT_DOWN ) {
+			// The touch and the frames share the monotonic clock
+			long time = event.getEventTime() - conf.mReactionTime;
+			sendSelect(time * NANOS_PER_MILLI);
+		}
+		// Not consumed, the long click still removes the HUD
+		return false;
+	}
+	
+	/**
+	 * Send a selection to the event loop.
+	 * @param timeNanos The time of the selection, or 0 for the time it is handled.
+	 */
+	private void sendSelect(long timeNanos) {
+		mLoop.obtainMessage(MSG_SELECT, (int) (timeNanos >>> 32), (int) timeNanos).sendToTarget();
+	}
+	
+	/**
+	 * Go to next state of the axis.
+	 * @param timeNanos The time of the selection to take the position from 
+	 * the history of the axis, or 0 to take the current position.
+	 */
+	private void select(long timeNanos) {
+		if ( mRenderer == null || mIsOverlayHidden )
+			return;		// A touch queued before the cross or the removal
+		boolean isCrossed = timeNanos == 0 ? mRenderer.click() : mRenderer.click(timeNanos);
+		if ( isCrossed ) {
+			int x = mRenderer.getXCoordenate();
+			int y = mRenderer.getYCoordenate();
 			
 			// Prestate
 			mPreState = new PreState();
 			mPreState.positionX = x;
 			mPreState.positionY = y;
-			mPreState.directionX = mAhudView.getXDirection();
-			mPreState.directionY = mAhudView.getYDirection();
+			mPreState.directionX = mRenderer.getXDirection();
+			mPreState.directionY = mRenderer.getYDirection();
+			
+			AhudConfigurationSnapshot conf = mConfiguration.get();
+			if ( conf.mGesture == AhudConfiguration.GESTURE_SWIPE && !mHasSwipeStart ) {
+				// Only the start of the swipe, scan again for the end
+				mHasSwipeStart = true;
+				mSwipeStartX = x;
+				mSwipeStartY = y;
+				mRenderer.restart(mPreState);
+				return;
+			}
 			
-			destroyOverlayView();
+			if ( mCrossTime != 0 )
+				AHUD.endAsyncSection("AHUD:cross", mCrossCookie);	// Never restored
+			mCrossTime = System.nanoTime();
+			AHUD.beginAsyncSection("AHUD:cross", ++mCrossCookie);
+			if ( conf.mOverlayKept )
+				hideOverlayView();
+			else
+				removeOverlayView();
 			if ( mCrossListener == null || !mCrossListener.onCross(x, y) ) 	
-				click(x, y);
+				click(conf.mGesture, x, y);
+			mHasSwipeStart = false;
 		}
 	}
 	
+	//-------------------------------------------------------------------------
+	// Calls from the connection, from any thread
+	
 	/* package */ void setOnLongClickListener(OnLongClickListener listener) {
-		mLongClickListener = listener;
+		mLoop.obtainMessage(MSG_LONG_CLICK_LISTENER, listener).sendToTarget();
 	}
 	
-	/* package */ void setConfiguration(AhudConfiguration conf) {
-		mConfiguration = conf;
+	/**
+	 * Set a new configuration. The renderer takes it at its next frame and 
+	 * the touches at the next event, a swipe in progress starts again.
+	 */
+	/* package */ void setConfiguration(AhudConfigurationSnapshot conf) {
+		mLoop.obtainMessage(MSG_CONFIG, conf).sendToTarget();
 	}
 	
 	/* package */ void setOnCrossListener(OnCrossListener listener) {
-		mCrossListener = listener;
+		mLoop.obtainMessage(MSG_CROSS_LISTENER, listener).sendToTarget();
+	}
+	
+	/* package */ AhudMetrics getMetrics() {
+		return mMetrics.snapshot();
+	}
+	
+	/* package */ AhudEventStream getEventStream() {
+		return mEvents;
+	}
+	
+	/* package */ void setAccessibilityService(AccessibilityService service) {
+		mLoop.obtainMessage(MSG_INJECTOR, service).sendToTarget();
+	}
+	
+	/**
+	 * Add the overlay view, or show it again if it is kept.
+	 */
+	/* package */ void createOverlayView() {
+		mLoop.sendEmptyMessage(MSG_SHOW);
 	}
 	
+	/**
+	 * Remove the overlay view.
+	 */
+	/* package */ void destroyOverlayView() {
+		mLoop.sendEmptyMessage(MSG_HIDE);
+	}
+	
+	//-------------------------------------------------------------------------
+	// Event loop
+	
+	/**
+	 * The only place that changes the state of the service, in the main thread.
+	 * The result of the {@link Injector} comes with the latency in milliseconds
+	 * in <code>arg1</code> and the result in <code>arg2</code>.
+	 */
+	private final Handler mLoop = new Handler(Looper.getMainLooper()) {
+		@Override
+		public void handleMessage(Message msg) {
+			switch (msg.what) {
+			case MSG_SHOW:
+				addOverlayView();
+				break;
+				
+			case MSG_HIDE:
+				removeOverlayView();
+				break;
+				
+			case MSG_SELECT:
+				select(((long) msg.arg1 << 32) | (msg.arg2 & 0xFFFFFFFFL));
+				break;
+				
+			case MSG_INJECTED:
+				onInjected(msg.arg1, msg.arg2);
+				break;
+				
+			case MSG_CONFIG:
+				mConfiguration.set((AhudConfigurationSnapshot) msg.obj);
+				mHasSwipeStart = false;
+				break;
+				
+			case MSG_CROSS_LISTENER:
+				mCrossListener = (OnCrossListener) msg.obj;
+				if ( mCrossListener instanceof CrossDispatcher )
+					((CrossDispatcher) mCrossListener).setMetrics(mMetrics);
+				break;
+				
+			case MSG_LONG_CLICK_LISTENER:
+				mLongClickListener = (OnLongClickListener) msg.obj;
+				break;
+				
+			case MSG_INJECTOR:
+				mInjector.quit();
+				mInjector = createInjector((AccessibilityService) msg.obj);
+				break;
+				
+			case MSG_FINISH:
+				mIsFinishing = true;
+				removeOverlayView();
+				break;
+				
+			case MSG_BIND:
+				mIsFinishing = false;
+				break;
+			}
+		}
+	};
+	
 	//-------------------------------------------------------------------------
 	// Overlay view 
 
 	/**
 	 * Create the overlay view with the axis.
 	 */
-	/* package */ void createOverlayView() {
+	private void addOverlayView() {
 		AHUD.debug("TRACE: createOverlayView()");
+		if ( mIsOverlayHidden ) {
+			showOverlayView();
+			return;
+		}
+		AHUD.beginSection("AHUD:createOverlayView");
+		long start = System.nanoTime();
+		boolean isAdded = false;
 		
         // ////////////////////////////////////////////////////////////////////////////////
         // AHUDView
@@ -174,38 +383,140 @@ public class AhudService extends Service implements OnClickListener {
         // ////////////////////////////////////////////////////////////////////////////////
         
         WindowManager wm = (WindowManager) getSystemService(WINDOW_SERVICE);
-        if ( mAhudView == null ) {
-        	mConfiguration = mConfiguration == null ? new AhudConfiguration() : mConfiguration;
-        	mAhudView = new AhudView(this, mConfiguration, mPreState);
-        	wm.addView(mAhudView, ahudParams);
+        AhudConfigurationSnapshot conf = mConfiguration.get();
+        // The sprite window only covers one band, it needs the listener for the touches
+        boolean isSingleWindow = conf.mIsSingleWindow;
+        if ( isSingleWindow ) {
+        	// The view with the axis also takes the touches, like the listener
+        	ahudParams.type = listenerParams.type;
+        	ahudParams.flags = listenerParams.flags;
         }
-        if ( mListenerView == null ) {
+        if ( mRenderer == null ) {
+        	switch (conf.mRenderMode) {
+        	case AhudConfiguration.RENDER_SURFACE:
+        		mRenderer = new AhudSurfaceView(this, mConfiguration, mPreState, mMetrics, mEvents);
+        		break;
+        		
+        	case AhudConfiguration.RENDER_SPRITE:
+        		AhudView view = new AhudView(this, mConfiguration, mPreState, mMetrics, mEvents);
+        		// Only one band, it can go off screen at the edges
+        		ahudParams.flags |= LayoutParams.FLAG_LAYOUT_NO_LIMITS;
+        		view.layoutSprite(ahudParams);
+        		mRenderer = view;
+        		break;
+        		
+        	default:
+        		mRenderer = new AhudView(this, mConfiguration, mPreState, mMetrics, mEvents);
+        		break;
+        	}
+        	View view = mRenderer.getView();
+        	if ( isSingleWindow ) {
+        		view.setClickable(true);
+        		view.setOnClickListener(this);
+        		view.setOnTouchListener(this);
+        		view.setOnLongClickListener(mLongClickListener);
+        		mTouchView = view;
+        		mTouchParams = ahudParams;
+        	}
+        	wm.addView(view, ahudParams);
+        	isAdded = true;
+        }
+        if ( mListenerView == null && !isSingleWindow ) {
             mListenerView = new ListenerView(this);
             mListenerView.setClickable(true);
             mListenerView.setOnClickListener(this);
+            mListenerView.setOnTouchListener(this);
             mListenerView.setOnLongClickListener(mLongClickListener);
             
         	wm.addView(mListenerView, listenerParams);
+        	mTouchView = mListenerView;
+        	mTouchParams = listenerParams;
+        	isAdded = true;
         }
+        if ( isAdded )
+        	mMetrics.getCreateDurations().recordNanos(System.nanoTime() - start);
+        AHUD.endSection();
+        logCrossToScan();
+	}
+	
+	/**
+	 * Let the touches pass through the overlay view, but keep the windows.
+	 */
+	private void hideOverlayView() {
+		AHUD.debug("TRACE: hideOverlayView()");
+		if ( mTouchView == null )
+			return;
+		AHUD.beginSection("AHUD:hideOverlayView");
+		long start = System.nanoTime();
+		mIsOverlayHidden = true;
+		mTouchParams.flags |= LayoutParams.FLAG_NOT_TOUCHABLE;
+		WindowManager wm = (WindowManager) getSystemService(WINDOW_SERVICE);
+		wm.updateViewLayout(mTouchView, mTouchParams);
+		mMetrics.getDestroyDurations().recordNanos(System.nanoTime() - start);
+		AHUD.endSection();
+	}
+	
+	/**
+	 * Take the touches again and start a new scan in the kept windows.
+	 */
+	private void showOverlayView() {
+		AHUD.debug("TRACE: showOverlayView()");
+		AHUD.beginSection("AHUD:showOverlayView");
+		long start = System.nanoTime();
+		mIsOverlayHidden = false;
+		mRenderer.restart(mPreState);
+		mTouchParams.flags &= ~LayoutParams.FLAG_NOT_TOUCHABLE;
+		WindowManager wm = (WindowManager) getSystemService(WINDOW_SERVICE);
+		wm.updateViewLayout(mTouchView, mTouchParams);
+		mMetrics.getCreateDurations().recordNanos(System.nanoTime() - start);
+		AHUD.endSection();
+		logCrossToScan();
+	}
+	
+	/**
+	 * Log the time from the last cross to the next scan.
+	 */
+	private void logCrossToScan() {
+		long now = System.nanoTime();
+		if ( mInjectedTime != 0 ) {
+			mMetrics.getInjectionToRestored().recordNanos(now - mInjectedTime);
+			mInjectedTime = 0;
+		}
+		if ( mCrossTime != 0 ) {
+			Log.i(AHUD.TAG, "Cross to scan: " + (now - mCrossTime) / NANOS_PER_MILLI + " ms");
+			AHUD.endAsyncSection("AHUD:cross", mCrossCookie);
+			mCrossTime = 0;
+		}
 	}
 
 	/**
-	 * Destroy the overlay view.
-	 * @param all True to remove all the view, false to keep {@link ButtonsBar} and {@link ListenerView}.
+	 * Destroy the overlay view: remove the renderer window and the 
+	 * {@link ListenerView}, also when they are kept hidden.
 	 */
-	/* package */ void destroyOverlayView() {
+	private void removeOverlayView() {
     	AHUD.debug("TRACE: destroyOverlayView()");
+    	AHUD.beginSection("AHUD:destroyOverlayView");
+    	long start = System.nanoTime();
+    	boolean isRemoved = false;
     	WindowManager wm = (WindowManager) getSystemService(WINDOW_SERVICE);
-	    if (mAhudView != null )
+	    if (mRenderer != null )
 	    {
-	    	wm.removeViewImmediate(mAhudView);
-	    	mAhudView = null;
+	    	wm.removeViewImmediate(mRenderer.getView());
+	    	mRenderer = null;
+	    	isRemoved = true;
 	    }
 	    if (mListenerView != null )
 	    {
 	    	wm.removeViewImmediate(mListenerView);
 	    	mListenerView = null;
+	    	isRemoved = true;
 	    }
+	    if ( isRemoved )
+	    	mMetrics.getDestroyDurations().recordNanos(System.nanoTime() - start);
+	    mTouchView = null;
+	    mTouchParams = null;
+	    mIsOverlayHidden = false;
+	    AHUD.endSection();
 	}
 	
 	//-------------------------------------------------------------------------
@@ -213,35 +524,47 @@ public class AhudService extends Service implements OnClickListener {
 	
 	/**
 	 * Handle the end of click events to create overlay view.
+	 * @param latency The latency of the injection in milliseconds.
+	 * @param result The result of the {@link Injector}.
 	 */
-	private Handler mHandler = new Handler() {
-    	@Override
-    	public void handleMessage (Message msg) {
-    		if ( !mIsFinishing )
-    			createOverlayView();
-    	}
-	};
+	private void onInjected(int latency, int result) {
+		AHUD.debug("Click latency: " + latency + " ms" 
+				+ (result == Injector.RESULT_CANCELLED ? " (cancelled)" : ""));
+		mInjectedTime = System.nanoTime();
+		if ( mPreState != null )
+			mEvents.publish(AhudEventStream.TYPE_INJECTION, mInjectedTime, 
+					mPreState.positionX, mPreState.positionY, result);
+		if ( mCrossTime != 0 )
+			mMetrics.getCrossToInjection().recordNanos(mInjectedTime - mCrossTime);
+		if ( !mIsFinishing )
+			addOverlayView();
+	}
 	
     /**
-     * Generate click event.
+     * Generate the gesture of the configuration.
+     * @param gesture The gesture.
      * @param x The abscissa coordinate.
      * @param y The ordinatte coordiante.
      */
-    private void click(final float x, final float y) {
-    	new Thread(new Runnable() {
-			@Override
-			public void run() {
-				Log.i(AHUD.TAG, "Generate click event in: (" + x + ", " + y + ")");
-				Instrumentation i = new Instrumentation();
-				MotionEvent down = MotionEvent.obtain(SystemClock.uptimeMillis(), SystemClock.uptimeMillis(),MotionEvent.ACTION_DOWN,x, y, 0);
-				MotionEvent up = MotionEvent.obtain(SystemClock.uptimeMillis(), SystemClock.uptimeMillis(), MotionEvent.ACTION_UP, x, y, 0);
-				i.sendPointerSync(down);
-				i.sendPointerSync(up);
-				up.recycle();
-				down.recycle();
-				mHandler.sendEmptyMessage(0);
-			}
-    	}).start();
+    private void click(int gesture, float x, float y) {
+    	if ( gesture == AhudConfiguration.GESTURE_SWIPE && mHasSwipeStart ) {
+    		mInjector.inject(gesture, mSwipeStartX, mSwipeStartY, x, y);
+    	}
+    	else {
+    		mInjector.inject(gesture, x, y, x, y);
+    	}
+    }
+    
+    /**
+     * Create the injector of the clicks.
+     * @param service The accessibility service to dispatch gestures, or null.
+     * @return The gestures injector if there is service and the system has 
+     * them, the instrumentation injector otherwise.
+     */
+    private Injector createInjector(AccessibilityService service) {
+    	if ( service != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N )
+    		return new GestureInjector(service, mLoop, MSG_INJECTED);
+    	return new InstrumentationInjector(mLoop, MSG_INJECTED);
     }
 
 
@@ -19,6 +19,9 @@
 
 package com.limbika.ahud;
 
+import java.util.concurrent.Executor;
+
+import android.accessibilityservice.AccessibilityService;
 import android.app.Service;
 import android.content.ComponentName;
 import android.content.Context;
@@ -30,16 +33,23 @@ import android.view.View.OnLongClickListener;
 
 /**
  * Accessibility HUD Service Connection. 
+ * <p>
+ * The listeners, the configuration and the overlay can be set from any thread,
+ * the service handles them in order in its event loop.
  */
 public final class AhudServiceConnection implements ServiceConnection {
 	
+	/** Crosses that can wait for a listener in an executor, by default */
+	public static final int DEFAULT_CROSS_QUEUE_CAPACITY = 16;
+	
 	private Context								mContext;
-	private AhudService 						mBoundService;
-	private AhudConfiguration					mConfiguration;
-	private boolean								mIsBound;
+	private volatile AhudService 				mBoundService;
+	private volatile AhudConfigurationSnapshot	mConfiguration;
+	private volatile boolean					mIsBound;
 	private boolean								mIsStartOnBind;
 	private OnServiceConnectionListener			mConnectionListener;
-	private OnCrossListener						mCrossListener;
+	private volatile OnCrossListener			mCrossListener;
+	private volatile AccessibilityService		mAccessibilityService;
 
 	/**
 	 * Interface definition for a callback to be invoked when the
@@ -62,7 +72,8 @@ public final class AhudServiceConnection implements ServiceConnection {
 	 */
 	public interface OnCrossListener {
 		/**
-		 * Called when the bars are crossed.
+		 * Called when the bars are crossed, in the main thread or in the 
+		 * executor given with the listener.
 		 * @param x The x coordenate.
 		 * @param y The y coordenate.
 		 * @return 
@@ -71,6 +82,8 @@ public final class AhudServiceConnection implements ServiceConnection {
 		 * <p>
 		 * False to manage automatically the HUD.
 		 * Library inject click event and add overlay view after it.
+		 * <p>
+		 * Ignored if the listener runs in an executor, the click is always injected.
 		 */
 		public boolean onCross(int x, int y);
 	}
@@ -115,10 +128,13 @@ public final class AhudServiceConnection implements ServiceConnection {
 		});
 		
 
-		if (mConfiguration != null)
-			mBoundService.setConfiguration(mConfiguration);
+		AhudConfigurationSnapshot conf = mConfiguration;
+		if (conf != null)
+			mBoundService.setConfiguration(conf);
 		if(mCrossListener != null)
 			mBoundService.setOnCrossListener(mCrossListener);
+		if (mAccessibilityService != null)
+			mBoundService.setAccessibilityService(mAccessibilityService);
 		if (mConnectionListener != null)
 			mConnectionListener.onServiceConnected();
 		if ( mIsStartOnBind )
@@ -150,36 +166,136 @@ public final class AhudServiceConnection implements ServiceConnection {
 	 */
 	public void setOnCrossListener(OnCrossListener listener) {
 		mCrossListener = listener;
-		if ( mIsBound )
-			mBoundService.setOnCrossListener(listener);
+		AhudService service = getService();
+		if ( service != null )
+			service.setOnCrossListener(listener);
 	}
 	
 	/**
-	 * Set the configuration of the HUD.
+	 * Register a callback to be invoked in an executor when the bars are 
+	 * crossed, with a queue of {@link #DEFAULT_CROSS_QUEUE_CAPACITY} crosses.
+	 * @param listener The callback that will run.
+	 * @param executor The executor of the callback.
+	 * @see #setOnCrossListener(OnCrossListener, Executor, int)
+	 */
+	public void setOnCrossListener(OnCrossListener listener, Executor executor) {
+		setOnCrossListener(listener, executor, DEFAULT_CROSS_QUEUE_CAPACITY);
+	}
+	
+	/**
+	 * Register a callback to be invoked in an executor when the bars are 
+	 * crossed. The HUD does not wait for it: the click is injected and the
+	 * scan goes on, the result of the callback is ignored.
+	 * <p>
+	 * The crosses wait for the callback in a queue and it gets them in order, 
+	 * one at a time. When the queue is full the oldest cross is dropped, so a
+	 * slow callback gets the last crosses; the drops are counted in 
+	 * {@link AhudMetrics#getDroppedCrosses()}. If the executor rejects the task the 
+	 * crosses stay in the queue until the next one.
+	 * @param listener The callback that will run.
+	 * @param executor The executor of the callback.
+	 * @param capacity The number of crosses that can wait for the callback.
+	 */
+	public void setOnCrossListener(OnCrossListener listener, Executor executor, int capacity) {
+		setOnCrossListener(new CrossDispatcher(listener, executor, capacity));
+	}
+	
+	/**
+	 * Inject the clicks as gestures of an accessibility service, from 
+	 * {@link android.os.Build.VERSION_CODES#N}. They reach the windows of 
+	 * every application and do not block any thread.
+	 * The service must declare <code>android:canPerformGestures="true"</code>.
+	 * Without it, or in older systems, the clicks are injected with 
+	 * {@link android.app.Instrumentation}.
+	 * @param service The running accessibility service, or null to go back
+	 * to the instrumentation.
+	 */
+	public void setAccessibilityService(AccessibilityService service) {
+		mAccessibilityService = service;
+		AhudService boundService = getService();
+		if ( boundService != null )
+			boundService.setAccessibilityService(service);
+	}
+	
+	/**
+	 * Set the configuration of the HUD. The current values are copied, call 
+	 * it again after changing the configuration in place.
 	 * @param conf The configuration.
+	 * @see #setConfiguration(AhudConfigurationSnapshot)
 	 */
 	public void setConfiguration(AhudConfiguration conf) {
+		setConfiguration(conf.snapshot());
+	}
+	
+	/**
+	 * Set the configuration of the HUD. It can be called from any thread. 
+	 * A shown HUD takes the speeds, the width, the initial axis and the start 
+	 * from the next frame, without new windows; the render, motion and input 
+	 * modes apply when it is added again.
+	 * @param conf The configuration.
+	 */
+	public void setConfiguration(AhudConfigurationSnapshot conf) {
 		mConfiguration = conf;
-		if ( mIsBound )
-			mBoundService.setConfiguration(conf);
+		AhudService service = getService();
+		if ( service != null )
+			service.setConfiguration(conf);
 	}
 	
 	/**
 	 * Add the HUD overlay view.
 	 */
 	public void addOverlayView() {
-		if ( mIsBound )
-			mBoundService.createOverlayView();
+		AhudService service = getService();
+		if ( service != null )
+			service.createOverlayView();
 	}
 	
 	/**
 	 * Remove the HUD overlay view.
 	 */
 	public void removeOverlayView() {
-		if ( mIsBound )
-			mBoundService.destroyOverlayView();
+		AhudService service = getService();
+		if ( service != null )
+			service.destroyOverlayView();
+	}
+	
+	/**
+	 * @return The connected service if it is bound, or null.
+	 */
+	private AhudService getService() {
+		return mIsBound ? mBoundService : null;
 	}
 	
+    /**
+     * Switch the trace sections of the HUD, shown by systrace and Perfetto
+     * when the application is traced (<code>atrace -a package</code>). Each cross is one
+     * asynchronous section from API 29. Off by default.
+     * @param enabled True to emit the sections.
+     */
+    public static void setTracingEnabled(boolean enabled) {
+    	AHUD.setTracing(enabled);
+    }
+    
+    /**
+     * Take a snapshot of the performance metrics of the HUD, since the 
+     * service was created.
+     * @return The metrics, or null if the service is not bound.
+     */
+    public AhudMetrics getMetrics() {
+    	AhudService service = getService();
+    	return service == null ? null : service.getMetrics();
+    }
+    
+    /**
+     * Get the feed of positions, states and injections of the HUD. It lives 
+     * as long as the service, each consumer polls it with its own reader.
+     * @return The event stream, or null if the service is not bound.
+     */
+    public AhudEventStream getEventStream() {
+    	AhudService service = getService();
+    	return service == null ? null : service.getEventStream();
+    }
+    
     /**
      * @return The bounded service.
      */
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Process;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.View;
+
+import com.limbika.ahud.core.AxisScanner;
+
+/**
+ * Surface with the Accessibility HUD Axis, drawn from its own render thread
+ * so the work of the host app in the UI thread does not move the axis.
+ */
+/* package */ class AhudSurfaceView extends SurfaceView implements AhudRenderer, SurfaceHolder.Callback {
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final AxisScanner	mScanner;		// Guarded by itself
+	private final AxisPainter	mPainter;
+	private final AtomicReference<AhudConfigurationSnapshot> mConfSource;
+	private AhudConfigurationSnapshot mConf;	// Guarded by mScanner
+	private final boolean		mIsFrameClock;
+	private final AhudMetrics	mMetrics;
+	private final AhudEventStream mEvents;
+	private RenderThread		mRenderThread;
+	
+	public AhudSurfaceView(Context context, AtomicReference<AhudConfigurationSnapshot> conf, 
+			PreState preState, AhudMetrics metrics, AhudEventStream events) {
+		super(context);
+		AHUD.debug("TRACE: AhudSurfaceView.onCreate()");
+		mConfSource = conf;
+		mConf = conf.get();
+		mMetrics = metrics;
+		mEvents = events;
+		mScanner = mConf.createScanner(preState);
+		mPainter = new AxisPainter(mConf);
+		mIsFrameClock = mConf.mMotionMode == AhudConfiguration.MOTION_CLOCK;
+		
+		setZOrderOnTop(true);
+		getHolder().setFormat(PixelFormat.TRANSLUCENT);
+		getHolder().addCallback(this);
+	}
+
+	@Override
+	public void surfaceCreated(SurfaceHolder holder) {
+		AHUD.debug("TRACE: AhudSurfaceView.surfaceCreated()");
+		mRenderThread = new RenderThread(holder);
+		mRenderThread.start();
+	}
+
+	@Override
+	public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+		AHUD.debug("Surface size: " + width + "x" + height);
+		synchronized (mScanner) {
+			mScanner.setFieldSize(width, height);
+		}
+	}
+
+	@Override
+	public void surfaceDestroyed(SurfaceHolder holder) {
+		AHUD.debug("TRACE: AhudSurfaceView.surfaceDestroyed()");
+		// The surface can not be used after return, wait for the thread
+		mRenderThread.finish();
+		mRenderThread = null;
+	}
+	
+	@Override
+	public View getView() {
+		return this;
+	}
+
+	@Override
+	public boolean click() {
+		synchronized (mScanner) {
+			boolean crossed = mScanner.click();
+			publishState();
+			mScanner.notifyAll();
+			return crossed;
+		}
+	}
+
+	@Override
+	public boolean click(long timeNanos) {
+		synchronized (mScanner) {
+			boolean crossed = mScanner.click(timeNanos);
+			publishState();
+			mScanner.notifyAll();
+			return crossed;
+		}
+	}
+
+	@Override
+	public void reset() {
+		synchronized (mScanner) {
+			mScanner.reset();
+			publishState();
+			mScanner.notifyAll();
+		}
+	}
+
+	@Override
+	public void restart(PreState preState) {
+		synchronized (mScanner) {
+			checkConfiguration();
+			mConf.restartScanner(mScanner, preState);
+			mScanner.setFieldSize(mScanner.getFieldWidth(), mScanner.getFieldHeight());
+			publishState();
+			mScanner.notifyAll();
+		}
+	}
+
+	@Override
+	public void pause() {
+		synchronized (mScanner) {
+			mScanner.pause();
+			publishState();
+			mScanner.notifyAll();
+		}
+	}
+
+	@Override
+	public int getXCoordenate() {
+		synchronized (mScanner) {
+			return (int) mScanner.getVerticalPosition();
+		}
+	}
+
+	@Override
+	public int getYCoordenate() {
+		synchronized (mScanner) {
+			return (int) mScanner.getHorizontalPosition();
+		}
+	}
+
+	@Override
+	public int getXDirection() {
+		synchronized (mScanner) {
+			return mScanner.getXDirection();
+		}
+	}
+
+	@Override
+	public int getYDirection() {
+		synchronized (mScanner) {
+			return mScanner.getYDirection();
+		}
+	}
+
+	@Override
+	public void setColor(int color) {
+		synchronized (mScanner) {
+			mPainter.setColor(color);
+		}
+	}
+	
+	/**
+	 * Add the state of the scanner to the event stream, the caller holds the
+	 * lock of the scanner.
+	 */
+	private void publishState() {
+		mEvents.publish(AhudEventStream.TYPE_STATE, System.nanoTime(), mScanner);
+	}
+	
+	/**
+	 * Apply the last published configuration, if it is new. It is one volatile
+	 * read on each frame, the caller holds the lock of the scanner.
+	 */
+	private void checkConfiguration() {
+		AhudConfigurationSnapshot conf = mConfSource.get();
+		if ( conf != mConf ) {
+			mConf = conf;
+			mPainter.setConfiguration(conf);
+			if ( conf.updateScanner(mScanner) )
+				mScanner.setFieldSize(mScanner.getFieldWidth(), mScanner.getFieldHeight());
+		}
+	}
+	
+	/**
+	 * Draw the axis while the surface is alive. The posting of the canvas
+	 * blocks until the compositor takes the frame, so the loop runs at vsync.
+	 */
+	private class RenderThread extends Thread {
+		
+		private final SurfaceHolder mHolder;
+		private boolean mIsRunning = true;	// Guarded by mScanner
+		
+		RenderThread(SurfaceHolder holder) {
+			super("AhudRenderThread");
+			mHolder = holder;
+		}
+		
+		void finish() {
+			synchronized (mScanner) {
+				mIsRunning = false;
+				mScanner.notifyAll();
+			}
+			boolean interrupted = false;
+			while ( isAlive() ) {
+				try {
+					join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if ( interrupted )
+				Thread.currentThread().interrupt();
+		}
+		
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+			long lastFrameTime = 0;
+			while ( true ) {
+				Canvas canvas = mHolder.lockCanvas();
+				if ( canvas == null )
+					return;
+				boolean isScanning;
+				AHUD.beginSection("AHUD:drawSurface");
+				try {
+					canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+					synchronized (mScanner) {
+						if ( !mIsRunning )
+							return;
+						isScanning = mScanner.isScanning();
+						if ( isScanning ) {
+							checkConfiguration();
+							if ( mIsFrameClock )
+								mScanner.advance();
+							else
+								mScanner.step(1F);
+							mEvents.publish(AhudEventStream.TYPE_POSITION, System.nanoTime(), mScanner);
+							mPainter.draw(canvas, mScanner);
+						}
+					}
+				} finally {
+					mHolder.unlockCanvasAndPost(canvas);
+					AHUD.endSection();
+				}
+				if ( isScanning ) {
+					long frameTime = System.nanoTime();
+					if ( lastFrameTime != 0 )
+						mMetrics.recordFrame(frameTime - lastFrameTime);
+					lastFrameTime = frameTime;
+				}
+				else {
+					lastFrameTime = 0;
+					// The cleared frame is posted, sleep until the scan goes on
+					synchronized (mScanner) {
+						while ( mIsRunning && !mScanner.isScanning() ) {
+							try {
+								mScanner.wait();
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -17,55 +17,57 @@
  * license, as set out in LICENSE.txt.
  */
 
+
 package com.limbika.ahud;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Paint.Style;
 import android.graphics.Rect;
-import android.graphics.RectF;
+import android.os.Build;
 import android.os.Handler;
+import android.util.DisplayMetrics;
+import android.view.Choreographer;
+import android.view.Gravity;
+import android.view.View;
 import android.view.ViewGroup;
+import android.view.WindowManager;
+
+import com.limbika.ahud.core.AxisScanner;
 
 /**
  * View with the Accessibility HUD Axis.
  */
-/* package */ class AhudView extends ViewGroup {
-	
-	//-------------------------------------------------------------------------
-	// States
-	private static final int	STATE_FIRST_LINE 	= 1;
-	private static final int	STATE_SECOND_LINE 	= 2;
-	private static final int	STATE_CROSS			= 3;
-	private static final int	STATE_PAUSE			= 4;
+/* package */ class AhudView extends ViewGroup implements AhudRenderer {
 	
 	//-------------------------------------------------------------------------
 	// Constants
-	private static final float	RADIUS				= 4F;
-	private static final int	COLOR 				= Color.parseColor("#0099cc");	// Holo Blue Dark
-	private static final int 	STROKE_WIDTH 		= 2;
-	private static final int 	STROKE_WIDTH_DART	= 4;
-	private static final int	ALPHA_EMPTY			= 255;
-	private static final int	ALPHA_HALF			= 128;
-	private static final int	ALPHA_HALF_HALF		= 64;
-	private static final int	DART_SIZE			= 8;
+	private static final int	DIRTY_MARGIN		= AxisPainter.STROKE_WIDTH_DART + 1;	// Stroke and antialias
 	
 	//-------------------------------------------------------------------------
 	// Members
-	private int 				mState 				= STATE_FIRST_LINE;
-	private int					mMovingAxis;
-	private int 				mHorizontalDirectionFactor;
-	private int 				mVerticalDirectionFactor;
-	private float 				mHorizontalPosition;
-	private float 				mVerticalPosition;
-	
-	private Paint				mPaintBox;
-	private Paint				mPaintBoxInside;
-	private Paint				mPaintDart;
-	
-	private AhudConfiguration	mConf;
+	private AxisScanner			mScanner;
+	private AxisPainter			mPainter;
+	private FrameClock			mFrameClock;
+	private final AhudMetrics	mMetrics;
+	private final AhudEventStream mEvents;
+	private long				mLastFrameTime;		// ns, 0 after a stop
+	
+	// Origin of the window in the scanned area. In sprite mode the window
+	// only covers one axis band, the scanned area is the whole display.
+	private boolean				mIsSprite;
+	private int					mWindowX;
+	private int					mWindowY;
+	
+	// Geometry reused by every frame, onDraw() must not allocate
+	private final Rect			mAxisBounds			= new Rect();
+	private final Rect			mLastAxisBounds		= new Rect();
+	private final Rect			mDirtyRect			= new Rect();
+	
+	// The configuration published by the service and the one applied
+	private final AtomicReference<AhudConfigurationSnapshot> mConfSource;
+	private AhudConfigurationSnapshot mConf;
 	private Handler				mHandler 			= new Handler() {
 		@Override
 		public void handleMessage(android.os.Message msg) {
@@ -73,76 +75,106 @@ import android.view.ViewGroup;
 		}
 	};
 	
-	public AhudView(Context context, AhudConfiguration conf, PreState preState) {
+	public AhudView(Context context, AtomicReference<AhudConfigurationSnapshot> conf, 
+			PreState preState, AhudMetrics metrics, AhudEventStream events) {
 		super(context);
 		AHUD.debug("TRACE: HUDView.onCreate()");
 		
-        mPaintBox = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaintBox.setColor(COLOR);
-        mPaintBox.setAlpha(ALPHA_EMPTY);
-        mPaintBox.setStyle(Style.STROKE);
-        mPaintBox.setStrokeWidth(STROKE_WIDTH);
-        
-        mPaintBoxInside = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaintBoxInside.setColor(COLOR);
-        mPaintBoxInside.setAlpha(ALPHA_HALF_HALF);
-        mPaintBoxInside.setStyle(Style.FILL);
-        
-        mPaintDart = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaintDart.setColor(COLOR);
-        mPaintDart.setAlpha(ALPHA_EMPTY);
-        mPaintDart.setStyle(Style.STROKE);
-        mPaintDart.setStrokeWidth(STROKE_WIDTH_DART);
-
-        /* Configuration */
-		mConf = conf;
-		mHorizontalDirectionFactor = 1;
-		mVerticalDirectionFactor = 1;
-		mMovingAxis = conf.getAxisInital();
-		mVerticalPosition = conf.getVerticalStart() == AhudConfiguration.START_LEFT ? 0 : -1;
-		mHorizontalPosition = conf.getHorizontalStart() == AhudConfiguration.START_TOP ? 0 : -1;
-		if ( conf.isAxisRestater() && preState != null ) {
-			mVerticalPosition = preState.positionX;
-			mHorizontalPosition = preState.positionY;
-			mVerticalDirectionFactor = preState.directionX;
-			mHorizontalDirectionFactor = preState.directionY;
+		mConfSource = conf;
+		mConf = conf.get();
+		mMetrics = metrics;
+		mEvents = events;
+		mScanner = mConf.createScanner(preState);
+		mPainter = new AxisPainter(mConf);
+		if ( mConf.mMotionMode == AhudConfiguration.MOTION_CLOCK 
+				&& Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ) {
+			mFrameClock = new FrameClock();
+		}
+		mIsSprite = mConf.mRenderMode == AhudConfiguration.RENDER_SPRITE;
+		if ( mIsSprite ) {
+			// The window is sized from the positions, resolve them now
+			updateFieldSize();
 		}
 	}
 	
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		if ( mFrameClock != null )
+			mFrameClock.start();
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		if ( mFrameClock != null )
+			mFrameClock.stop();
+		super.onDetachedFromWindow();
+	}
+	
 	@Override
 	protected void onLayout (boolean changed, int left, int top, int right, int bottom) {
-		AHUD.debug("TRACE: HUDView.onLayout(" + changed + ", " + left + ", " + top + ", " 
+		// In sprite mode each move of the window is a layout, do not build the strings
+		if ( AHUD.DEBUG )
+			AHUD.debug("TRACE: HUDView.onLayout(" + changed + ", " + left + ", " + top + ", " 
 	                                  + right + ", " + bottom + ")");
 		if (changed) {
 	        int width = this.getWidth();
 	        int height = this.getHeight();
-	        AHUD.debug("View size: " + width + "x" + height);
+	        if ( AHUD.DEBUG )
+	        	AHUD.debug("View size: " + width + "x" + height);
+	        invalidate();
 		}
 		
-		mVerticalPosition = mVerticalPosition == -1 ? this.getWidth() : mVerticalPosition;
-		mHorizontalPosition = mHorizontalPosition == -1 ? this.getHeight() : mHorizontalPosition;
+		// The sprite scans the whole display, a move of its window is not a new size
+		if ( changed || !mIsSprite )
+			updateFieldSize();
+	}
+	
+	/**
+	 * Update the scanned area of the scanner.
+	 */
+	private void updateFieldSize() {
+		if ( mIsSprite ) {
+			DisplayMetrics metrics = getResources().getDisplayMetrics();
+			mScanner.setFieldSize(metrics.widthPixels, metrics.heightPixels);
+		}
+		else {
+			mScanner.setFieldSize(getWidth(), getHeight());
+		}
 	}
 	
 	@Override
 	public void onDraw(Canvas canvas) {
 		super.onDraw(canvas);
-		switch (mState) {
-		case STATE_FIRST_LINE:
-			drawSingleAxis(canvas);
-			break;
-			
-		case STATE_SECOND_LINE:
-			drawDoubleAxis(canvas);
-			break;
-			
-		case STATE_PAUSE:
-		case STATE_CROSS:
-		default:
+		if ( !mScanner.isScanning() ) {
+			mLastFrameTime = 0;
 			return;
 		}
-		checkLimits();
-		updatePosition();
-		invalidate();
+		if ( mFrameClock == null )
+			checkConfiguration();
+		AHUD.beginSection("AHUD:onDraw");
+		canvas.save();
+		canvas.translate(-mWindowX, -mWindowY);
+		mPainter.draw(canvas, mScanner);
+		canvas.restore();
+		if ( mFrameClock == null ) {
+			long frameTime = System.nanoTime();
+			recordFrame(frameTime);
+			mScanner.step(1F);
+			mEvents.publish(AhudEventStream.TYPE_POSITION, frameTime, mScanner);
+			onAxisMoved();
+		}
+		AHUD.endSection();
+	}
+	
+	/**
+	 * Record the interval from the last drawn frame.
+	 * @param frameTime The time of this frame in nanoseconds.
+	 */
+	private void recordFrame(long frameTime) {
+		if ( mLastFrameTime != 0 )
+			mMetrics.recordFrame(frameTime - mLastFrameTime);
+		mLastFrameTime = frameTime;
 	}
 	
 	@Override
@@ -150,162 +182,273 @@ import android.view.ViewGroup;
 		return mHandler;
 	}
 	
-	/**
-	 * Go to next state, usually after a click.
-	 * @return True if the axis are crossed.
-	 */
+	@Override
+	public View getView() {
+		return this;
+	}
+	
+	@Override
 	public boolean click() {
-		switch (mState) {
-		case STATE_FIRST_LINE:
-			mState = STATE_SECOND_LINE;
-			switchMovingAxis();
-			break;
-
-		case STATE_SECOND_LINE:
-			mState = STATE_CROSS;
-			return true;
-			
-		case STATE_PAUSE:
-			mState = STATE_FIRST_LINE;
-			invalidate();
-			return false;
-		}
-		return false;
+		return onClick(mScanner.click());
+	}
+	
+	@Override
+	public boolean click(long timeNanos) {
+		return onClick(mScanner.click(timeNanos));
+	}
+	
+	private boolean onClick(boolean crossed) {
+		publishState();
+		if ( mScanner.getState() == AxisScanner.STATE_FIRST_LINE )
+			resume();
+		invalidate();
+		return crossed;
 	}
 	
 	/**
 	 * Hack for the fucking softkeyboard.
 	 */
+	@Override
 	public void reset() {
-		mMovingAxis = mConf.getAxisInital();
-		mState = STATE_FIRST_LINE;
+		mScanner.reset();
+		publishState();
+		resume();
+		invalidate();
 	}
 	
-	/**
-	 * @return The X coordeante.
-	 */
+	@Override
+	public void restart(PreState preState) {
+		checkConfiguration();
+		mConf.restartScanner(mScanner, preState);
+		publishState();
+		updateFieldSize();
+		resume();
+		invalidate();
+	}
+	
+	@Override
 	public int getXCoordenate() {
-		return (int) mVerticalPosition;
+		return (int) mScanner.getVerticalPosition();
 	}
 
-	/**
-	 * @return The Y coordenate.
-	 */
+	@Override
 	public int getYCoordenate() {
-		return (int) mHorizontalPosition;
+		return (int) mScanner.getHorizontalPosition();
 	}
 	
+	@Override
 	public int getXDirection() {
-		return mVerticalDirectionFactor;
+		return mScanner.getXDirection();
 	}
 	
+	@Override
 	public int getYDirection() {
-		return mHorizontalDirectionFactor;
+		return mScanner.getYDirection();
+	}
+	
+	@Override
+	public void pause() {
+		mScanner.pause();
+		publishState();
+		invalidate();
 	}
 	
 	/**
-	 * Pause the HUD.
+	 * Add the state of the scanner to the event stream.
 	 */
-	public void pause() {
-		mState = STATE_PAUSE;
+	private void publishState() {
+		mEvents.publish(AhudEventStream.TYPE_STATE, System.nanoTime(), mScanner);
 	}
 	
+	@Override
 	public void setColor(int color) {
-		mPaintBox.setColor(color);
-		mPaintDart.setColor(color);
+		mPainter.setColor(color);
 	}
 	
-	private void drawSingleAxis (Canvas canvas) {
-		if (mMovingAxis == AhudConfiguration.AXIS_HORIZONTAL)
-		{
-			drawHorizontalAxis(canvas, true);
-		}
-		else if (mMovingAxis == AhudConfiguration.AXIS_VERTICAL)
-		{
-			drawVerticalAxis(canvas, true);
-		}
+	/**
+	 * Apply the last published configuration, if it is new. It is one volatile
+	 * read on each frame.
+	 */
+	private void checkConfiguration() {
+		AhudConfigurationSnapshot conf = mConfSource.get();
+		if ( conf != mConf )
+			setConfiguration(conf);
 	}
 	
-	private void drawDoubleAxis (Canvas canvas) {
-		mPaintBox.setAlpha(ALPHA_HALF);
-		boolean isFirstHAxis = mConf.getAxisInital() == AhudConfiguration.AXIS_HORIZONTAL;
-		drawVerticalAxis(canvas, !isFirstHAxis);
-		drawHorizontalAxis(canvas, isFirstHAxis);
+	/**
+	 * Apply a new configuration from this frame, in the same window.
+	 */
+	private void setConfiguration(AhudConfigurationSnapshot conf) {
+		mConf = conf;
+		mPainter.setConfiguration(conf);
+		if ( conf.updateScanner(mScanner) )
+			updateFieldSize();
+		mLastAxisBounds.setEmpty();
+		resume();		// The sprite window fits the new width
+		invalidate();
 	}
 	
-	private void updatePosition () {
-		if (mMovingAxis == AhudConfiguration.AXIS_HORIZONTAL)
-		{
-			mHorizontalPosition =(mHorizontalPosition + mHorizontalDirectionFactor * mConf.getHorizontalSpeed());
-		}
-		else if (mMovingAxis == AhudConfiguration.AXIS_VERTICAL)
-		{
-			mVerticalPosition = (mVerticalPosition + mVerticalDirectionFactor * mConf.getVerticalSpeed());		
-		}
+	/**
+	 * Move again after a pause or a reset.
+	 */
+	private void resume() {
+		mLastFrameTime = 0;
+		if ( mFrameClock != null )
+			mFrameClock.start();
+		if ( mIsSprite )
+			moveWindow();
 	}
 	
-	private void checkLimits() {
-		if (mVerticalPosition >= getWidth()) {
-			mVerticalDirectionFactor = -1;
-		}
-		if (mHorizontalPosition >= getHeight()) {
-			mHorizontalDirectionFactor = -1;
+	/**
+	 * Fit the window to the band of the moving axis in sprite mode. The band of
+	 * the first axis also holds the dart of the second one, so the window only 
+	 * moves while the first axis moves.
+	 * @param params The window parameters to update.
+	 * @return True if the parameters changed.
+	 */
+	/* package */ boolean layoutSprite(WindowManager.LayoutParams params) {
+		int half = Math.max(mConf.mAxisWidth, AxisPainter.DART_SIZE) + DIRTY_MARGIN;
+		int x = 0;
+		int y = 0;
+		int width = mScanner.getFieldWidth();
+		int height = mScanner.getFieldHeight();
+		if (mScanner.getMovingAxis() == AhudConfiguration.AXIS_HORIZONTAL) {
+			y = (int) mScanner.getHorizontalPosition() - half;
+			height = 2 * half;
 		}
-		if (mVerticalPosition <= 0) {
-			mVerticalDirectionFactor = 1;
+		else {
+			x = (int) mScanner.getVerticalPosition() - half;
+			width = 2 * half;
 		}
-		if (mHorizontalPosition <= 0) {
-			mHorizontalDirectionFactor = 1;
+		mWindowX = x;
+		mWindowY = y;
+		boolean changed = params.x != x || params.y != y 
+				|| params.width != width || params.height != height;
+		params.gravity = Gravity.TOP | Gravity.LEFT;
+		params.x = x;
+		params.y = y;
+		params.width = width;
+		params.height = height;
+		return changed;
+	}
+	
+	/**
+	 * Move the sprite window to the moving axis.
+	 */
+	private void moveWindow() {
+		ViewGroup.LayoutParams params = getLayoutParams();
+		if ( params instanceof WindowManager.LayoutParams 
+				&& layoutSprite((WindowManager.LayoutParams) params) ) {
+			WindowManager wm = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+			wm.updateViewLayout(this, params);
 		}
 	}
 	
 	/**
-	 * Draw horizontal axis.
-	 * @param canvas The canvas to draw.
-	 * @param mode True for main, axis axis. False for dart axis.
+	 * Show the new position of the axis.
 	 */
-	private void drawHorizontalAxis(Canvas canvas, boolean mode) {
-		int width = mConf.getAxisWidth();
-		if ( mode ) {
-			Rect rect = new Rect(0, (int) mHorizontalPosition - width, getWidth(), (int) mHorizontalPosition + width);
-			RectF rf = new RectF();
-			rf.set(rect);
-			canvas.drawRect(rf, mPaintBox);
-			Rect r = new Rect(0, (int) mHorizontalPosition - width, getWidth(), (int) mHorizontalPosition + width);
-			canvas.drawRect(r, mPaintBoxInside);
+	private void onAxisMoved() {
+		if ( mIsSprite && mScanner.getState() == AxisScanner.STATE_FIRST_LINE ) {
+			// The content of the window is the same, only the window moves
+			moveWindow();
+			if ( mFrameClock == null )
+				invalidate();	// Frame steps need a new frame to move again
 		}
 		else {
-			canvas.drawCircle(mVerticalPosition, mHorizontalPosition, width, mPaintDart);
-			canvas.drawLine(mVerticalPosition-DART_SIZE, mHorizontalPosition, mVerticalPosition+DART_SIZE, mHorizontalPosition, mPaintDart);
-			canvas.drawLine(mVerticalPosition, mHorizontalPosition-DART_SIZE, mVerticalPosition, mHorizontalPosition+DART_SIZE, mPaintDart);
+			invalidateAxis();
+		}
+	}
+	
+	/**
+	 * Invalidate only the area of the moving axis, the union of the bounds drawn
+	 * in the last frame and the bounds for the next one. Layout and state changes
+	 * still invalidate the whole view.
+	 * <p>
+	 * The partial redraw only helps software layers: from Android 5.0 a hardware
+	 * accelerated view ignores the area and is drawn whole, so there it is not
+	 * computed. The fill rate is saved by the {@link AhudConfiguration#RENDER_SPRITE}
+	 * window, that is only one band, and the {@link AhudConfiguration#RENDER_SURFACE}
+	 * surface, drawn out of the view hierarchy.
+	 */
+	@SuppressWarnings("deprecation")
+	private void invalidateAxis() {
+		if ( Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && isHardwareAccelerated() ) {
+			invalidate();
+			return;
 		}
+		getAxisBounds(mAxisBounds);
+		mDirtyRect.set(mLastAxisBounds);
+		mDirtyRect.union(mAxisBounds);
+		mLastAxisBounds.set(mAxisBounds);
+		if ( mDirtyRect.isEmpty() )
+			invalidate();
+		else
+			invalidate(mDirtyRect);
 	}
 	
 	/**
-	 * Draw vertical axis.
-	 * @param canvas The canvas to draw.
-	 * @param mode True for main, box axis. False for dart axis.
+	 * Get the bounds of the part that moves in the current state.
+	 * @param out The bounds, empty if nothing moves.
 	 */
-	private void drawVerticalAxis(Canvas canvas, boolean mode) {
-		int width = mConf.getAxisWidth();
-		if ( mode ) {
-			Rect rect = new Rect((int) mVerticalPosition - width, 0, (int) mVerticalPosition + width, getHeight());
-			RectF rf = new RectF();
-			rf.set(rect);
-			canvas.drawRoundRect(rf, RADIUS, RADIUS, mPaintBox);			
+	private void getAxisBounds(Rect out) {
+		int x = (int) mScanner.getVerticalPosition();
+		int y = (int) mScanner.getHorizontalPosition();
+		int state = mScanner.getState();
+		if ( state == AxisScanner.STATE_FIRST_LINE ) {
+			int width = mConf.mAxisWidth + DIRTY_MARGIN;
+			if (mScanner.getMovingAxis() == AhudConfiguration.AXIS_HORIZONTAL)
+				out.set(0, y - width, mScanner.getFieldWidth(), y + width);
+			else
+				out.set(x - width, 0, x + width, mScanner.getFieldHeight());
+		}
+		else if ( state == AxisScanner.STATE_SECOND_LINE ) {
+			// The first axis stays, only the dart moves
+			int radius = Math.max(mConf.mAxisWidth, AxisPainter.DART_SIZE) + DIRTY_MARGIN;
+			out.set(x - radius, y - radius, x + radius, y + radius);
 		}
 		else {
-			canvas.drawCircle(mVerticalPosition, mHorizontalPosition, width, mPaintDart);
-			canvas.drawLine(mVerticalPosition-DART_SIZE, mHorizontalPosition, mVerticalPosition+DART_SIZE, mHorizontalPosition, mPaintDart);
-			canvas.drawLine(mVerticalPosition, mHorizontalPosition-DART_SIZE, mVerticalPosition, mHorizontalPosition+DART_SIZE, mPaintDart);
+			out.setEmpty();
+			return;
 		}
+		out.offset(-mWindowX, -mWindowY);
 	}
 	
-	private void switchMovingAxis() {
-		if (mMovingAxis == AhudConfiguration.AXIS_HORIZONTAL)
-			mMovingAxis = AhudConfiguration.AXIS_VERTICAL;
-		else
-			mMovingAxis = AhudConfiguration.AXIS_HORIZONTAL;
+	/**
+	 * Move the axis from the vsync time instead of the drawn frames.
+	 * <p>
+	 * Kept in its own class so {@link Choreographer} is only loaded from API 16.
+	 */
+	private class FrameClock implements Choreographer.FrameCallback {
+		
+		private boolean mIsRunning;
+		
+		void start() {
+			if ( mIsRunning )
+				return;
+			mIsRunning = true;
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+		
+		void stop() {
+			mIsRunning = false;
+			Choreographer.getInstance().removeFrameCallback(this);
+		}
+		
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			if ( !mScanner.isScanning() ) {
+				// Paused or crossed, click() starts the clock again
+				mIsRunning = false;
+				mLastFrameTime = 0;
+				return;
+			}
+			checkConfiguration();
+			recordFrame(frameTimeNanos);
+			mScanner.advance(frameTimeNanos);
+			mEvents.publish(AhudEventStream.TYPE_POSITION, frameTimeNanos, mScanner);
+			onAxisMoved();
+			Choreographer.getInstance().postFrameCallback(this);
+		}
 	}
 	
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.limbika.ahud.core.AxisScanner;
+
+/**
+ * Draw the state of an {@link AxisScanner}, shared by the renderers.
+ */
+/* package */ class AxisPainter {
+
+	//-------------------------------------------------------------------------
+	// Constants
+	/* package */ static final int 	STROKE_WIDTH_DART	= 4;
+	/* package */ static final int	DART_SIZE			= 8;
+	private static final float	RADIUS				= 4F;
+	private static final int	COLOR 				= Color.parseColor("#0099cc");	// Holo Blue Dark
+	private static final int 	STROKE_WIDTH 		= 2;
+	private static final int	ALPHA_EMPTY			= 255;
+	private static final int	ALPHA_HALF			= 128;
+	private static final int	ALPHA_HALF_HALF		= 64;
+
+	//-------------------------------------------------------------------------
+	// Members
+	private Paint				mPaintBox;
+	private Paint				mPaintBoxInside;
+	private Paint				mPaintDart;
+	private int					mAxisWidth;
+
+	// Geometry reused by every frame, draw() must not allocate
+	private final Rect			mBarRect			= new Rect();
+	private final RectF			mBarRectF			= new RectF();
+	private final float[]		mDartLines			= new float[8];
+
+	public AxisPainter(AhudConfigurationSnapshot conf) {
+		mAxisWidth = conf.mAxisWidth;
+
+        mPaintBox = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaintBox.setColor(COLOR);
+        mPaintBox.setAlpha(ALPHA_EMPTY);
+        mPaintBox.setStyle(Style.STROKE);
+        mPaintBox.setStrokeWidth(STROKE_WIDTH);
+
+        mPaintBoxInside = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaintBoxInside.setColor(COLOR);
+        mPaintBoxInside.setAlpha(ALPHA_HALF_HALF);
+        mPaintBoxInside.setStyle(Style.FILL);
+
+        mPaintDart = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaintDart.setColor(COLOR);
+        mPaintDart.setAlpha(ALPHA_EMPTY);
+        mPaintDart.setStyle(Style.STROKE);
+        mPaintDart.setStrokeWidth(STROKE_WIDTH_DART);
+	}
+
+	public void setConfiguration(AhudConfigurationSnapshot conf) {
+		mAxisWidth = conf.mAxisWidth;
+	}
+
+	public void setColor(int color) {
+		mPaintBox.setColor(color);
+		mPaintDart.setColor(color);
+	}
+
+	/**
+	 * Draw the axis.
+	 * @param canvas The canvas to draw.
+	 * @param scanner The state to draw.
+	 */
+	public void draw(Canvas canvas, AxisScanner scanner) {
+		switch (scanner.getState()) {
+		case AxisScanner.STATE_FIRST_LINE:
+			drawSingleAxis(canvas, scanner);
+			break;
+
+		case AxisScanner.STATE_SECOND_LINE:
+			drawDoubleAxis(canvas, scanner);
+			break;
+		}
+	}
+
+	private void drawSingleAxis (Canvas canvas, AxisScanner scanner) {
+		mPaintBox.setAlpha(ALPHA_EMPTY);	// The painter outlives a cross with kept windows
+		if (scanner.getMovingAxis() == AhudConfiguration.AXIS_HORIZONTAL)
+		{
+			drawHorizontalAxis(canvas, scanner, true);
+		}
+		else if (scanner.getMovingAxis() == AhudConfiguration.AXIS_VERTICAL)
+		{
+			drawVerticalAxis(canvas, scanner, true);
+		}
+	}
+
+	private void drawDoubleAxis (Canvas canvas, AxisScanner scanner) {
+		mPaintBox.setAlpha(ALPHA_HALF);
+		boolean isFirstHAxis = scanner.getInitialAxis() == AhudConfiguration.AXIS_HORIZONTAL;
+		drawVerticalAxis(canvas, scanner, !isFirstHAxis);
+		drawHorizontalAxis(canvas, scanner, isFirstHAxis);
+	}
+
+	/**
+	 * Draw horizontal axis.
+	 * @param canvas The canvas to draw.
+	 * @param scanner The state to draw.
+	 * @param mode True for main, axis axis. False for dart axis.
+	 */
+	private void drawHorizontalAxis(Canvas canvas, AxisScanner scanner, boolean mode) {
+		int width = mAxisWidth;
+		float position = scanner.getHorizontalPosition();
+		if ( mode ) {
+			mBarRect.set(0, (int) position - width, scanner.getFieldWidth(), (int) position + width);
+			mBarRectF.set(mBarRect);
+			canvas.drawRect(mBarRectF, mPaintBox);
+			canvas.drawRect(mBarRect, mPaintBoxInside);
+		}
+		else {
+			drawDart(canvas, scanner, width);
+		}
+	}
+
+	/**
+	 * Draw vertical axis.
+	 * @param canvas The canvas to draw.
+	 * @param scanner The state to draw.
+	 * @param mode True for main, box axis. False for dart axis.
+	 */
+	private void drawVerticalAxis(Canvas canvas, AxisScanner scanner, boolean mode) {
+		int width = mAxisWidth;
+		float position = scanner.getVerticalPosition();
+		if ( mode ) {
+			mBarRect.set((int) position - width, 0, (int) position + width, scanner.getFieldHeight());
+			mBarRectF.set(mBarRect);
+			canvas.drawRoundRect(mBarRectF, RADIUS, RADIUS, mPaintBox);
+		}
+		else {
+			drawDart(canvas, scanner, width);
+		}
+	}
+
+	/**
+	 * Draw the dart in the cross of the axis.
+	 * @param canvas The canvas to draw.
+	 * @param scanner The state to draw.
+	 * @param radius The radius of the dart.
+	 */
+	private void drawDart(Canvas canvas, AxisScanner scanner, int radius) {
+		float x = scanner.getVerticalPosition();
+		float y = scanner.getHorizontalPosition();
+		float[] lines = mDartLines;
+		lines[0] = x - DART_SIZE;	lines[1] = y;	lines[2] = x + DART_SIZE;	lines[3] = y;
+		lines[4] = x;	lines[5] = y - DART_SIZE;	lines[6] = x;	lines[7] = y + DART_SIZE;
+		canvas.drawCircle(x, y, radius, mPaintDart);
+		canvas.drawLines(lines, mPaintDart);
+	}
+
+}
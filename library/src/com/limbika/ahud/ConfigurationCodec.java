@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Binary format of the stored configurations.
+ * <p>
+ * A header with the magic and the version of the format, the number of
+ * configurations and the configurations. Each configuration is a list of
+ * fields closed by {@link #TAG_END}. A field is a key, the tag and the type 
+ * of the value, and the value: a variable length integer, zigzag encoded, or 
+ * a length and the bytes. Fields with unknown tags are skipped and missing 
+ * fields keep the default value, so fields can be added without a new version.
+ * A mode with a value that is not known reads as the default one too.
+ */
+/* package */ class ConfigurationCodec {
+	
+	//-------------------------------------------------------------------------
+	// Constants
+	/* package */ static final int		MAGIC				= 0x41485544;	// "AHUD"
+	/* package */ static final int		VERSION				= 1;
+	
+	private static final int	TYPE_BITS			= 3;
+	private static final int	TYPE_VARINT			= 0;
+	private static final int	TYPE_BYTES			= 2;
+	
+	// Tags up to 31, the key is one byte
+	private static final int	TAG_END				= 0;
+	private static final int	TAG_ID				= 1;
+	private static final int	TAG_AXIS_RESTATER	= 2;
+	private static final int	TAG_AXIS_INITIAL	= 3;
+	private static final int	TAG_AXIS_WIDTH		= 4;
+	private static final int	TAG_HORIZONTAL_SPEED = 5;
+	private static final int	TAG_VERTICAL_SPEED	= 6;
+	private static final int	TAG_HORIZONTAL_START = 7;
+	private static final int	TAG_VERTICAL_START	= 8;
+	private static final int	TAG_MOTION_MODE		= 9;
+	private static final int	TAG_RENDER_MODE		= 10;
+	private static final int	TAG_OVERLAY_KEPT	= 11;
+	private static final int	TAG_SINGLE_WINDOW	= 12;
+	private static final int	TAG_INPUT_MODE		= 13;
+	private static final int	TAG_REACTION_TIME	= 14;
+	private static final int	TAG_GESTURE			= 15;
+	
+	/**
+	 * Encode a list of configurations.
+	 * @param configurations The configurations.
+	 * @return The bytes.
+	 * @throws IOException
+	 */
+	public static byte[] encode(Collection<AhudConfiguration> configurations) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + configurations.size() * 64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		write(out, configurations);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Decode a list of configurations.
+	 * @param bytes The bytes written by {@link #encode(Collection)}.
+	 * @return The configurations.
+	 * @throws IOException If the bytes are not a known version of the format.
+	 */
+	public static ArrayList<AhudConfiguration> decode(byte[] bytes) throws IOException {
+		return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+	
+	/**
+	 * Write the header and a list of configurations.
+	 * @param out The output.
+	 * @param configurations The configurations.
+	 * @throws IOException
+	 */
+	public static void write(DataOutput out, Collection<AhudConfiguration> configurations) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeInt(configurations.size());
+		for (AhudConfiguration conf : configurations) {
+			writeConfiguration(out, conf);
+		}
+	}
+	
+	/**
+	 * Read the header and a list of configurations.
+	 * @param in The input.
+	 * @return The configurations.
+	 * @throws IOException If the input is not a known version of the format.
+	 */
+	public static ArrayList<AhudConfiguration> read(DataInput in) throws IOException {
+		if ( in.readInt() != MAGIC )
+			throw new CorruptConfigurationException("Not a configuration file");
+		int version = in.readUnsignedByte();
+		if ( version > VERSION )
+			throw new CorruptConfigurationException("Unknown configuration format version " + version);
+		int count = in.readInt();
+		if ( count < 0 )
+			throw new CorruptConfigurationException("Malformed configuration count " + count);
+		// Not sized by a count that could be corrupt, the input ends before
+		ArrayList<AhudConfiguration> configurations = new ArrayList<AhudConfiguration>(Math.min(count, 64));
+		for (int i = 0; i < count; i++) {
+			configurations.add(readConfiguration(in));
+		}
+		return configurations;
+	}
+	
+	/**
+	 * Write the fields of one configuration.
+	 * @param out The output.
+	 * @param conf The configuration.
+	 * @throws IOException
+	 */
+	public static void writeConfiguration(DataOutput out, AhudConfiguration conf) throws IOException {
+		writeLong(out, TAG_ID, conf.mId);
+		writeBoolean(out, TAG_AXIS_RESTATER, conf.mAxisRestater);
+		writeInt(out, TAG_AXIS_INITIAL, conf.mAxisInitial);
+		writeInt(out, TAG_AXIS_WIDTH, conf.mAxisWidth);
+		writeInt(out, TAG_HORIZONTAL_SPEED, conf.mHorizontalSpeed);
+		writeInt(out, TAG_VERTICAL_SPEED, conf.mVerticalSpeed);
+		writeInt(out, TAG_HORIZONTAL_START, conf.mHorizontalStart);
+		writeInt(out, TAG_VERTICAL_START, conf.mVerticalStart);
+		writeInt(out, TAG_MOTION_MODE, conf.mMotionMode);
+		writeInt(out, TAG_RENDER_MODE, conf.mRenderMode);
+		writeBoolean(out, TAG_OVERLAY_KEPT, conf.mOverlayKept);
+		writeBoolean(out, TAG_SINGLE_WINDOW, conf.mSingleWindow);
+		writeInt(out, TAG_INPUT_MODE, conf.mInputMode);
+		writeInt(out, TAG_REACTION_TIME, conf.mReactionTime);
+		writeInt(out, TAG_GESTURE, conf.mGesture);
+		out.writeByte(TAG_END);
+	}
+	
+	/**
+	 * Read the fields of one configuration.
+	 * @param in The input.
+	 * @return The configuration.
+	 * @throws IOException
+	 */
+	public static AhudConfiguration readConfiguration(DataInput in) throws IOException {
+		AhudConfiguration conf = new AhudConfiguration();
+		int key;
+		while ( (key = in.readUnsignedByte()) != TAG_END ) {
+			int tag = key >>> TYPE_BITS;
+			int type = key & ((1 << TYPE_BITS) - 1);
+			if ( type != TYPE_VARINT ) {
+				// Written by a newer version
+				skip(in, type);
+				continue;
+			}
+			long value = readVarint(in);
+			switch (tag) {
+			case TAG_ID:				conf.mId = value;							break;
+			case TAG_AXIS_RESTATER:		conf.mAxisRestater = value != 0;			break;
+			case TAG_AXIS_INITIAL:		conf.mAxisInitial = (int) value;			break;
+			case TAG_AXIS_WIDTH:		conf.mAxisWidth = (int) value;				break;
+			case TAG_HORIZONTAL_SPEED:	conf.mHorizontalSpeed = (int) value;		break;
+			case TAG_VERTICAL_SPEED:	conf.mVerticalSpeed = (int) value;			break;
+			case TAG_HORIZONTAL_START:	conf.mHorizontalStart = (int) value;		break;
+			case TAG_VERTICAL_START:	conf.mVerticalStart = (int) value;			break;
+			case TAG_MOTION_MODE:		conf.mMotionMode = (int) value;				break;
+			case TAG_RENDER_MODE:		conf.mRenderMode = (int) value;				break;
+			case TAG_OVERLAY_KEPT:		conf.mOverlayKept = value != 0;				break;
+			case TAG_SINGLE_WINDOW:		conf.mSingleWindow = value != 0;			break;
+			case TAG_INPUT_MODE:		conf.mInputMode = (int) value;				break;
+			case TAG_REACTION_TIME:		conf.mReactionTime = (int) value;			break;
+			case TAG_GESTURE:			conf.mGesture = (int) value;				break;
+			default:
+				// Written by a newer version
+				break;
+			}
+		}
+		// The modes stored as 0 by a migration of the serialized versions
+		conf.normalize();
+		return conf;
+	}
+	
+	private static void writeInt(DataOutput out, int tag, int value) throws IOException {
+		writeLong(out, tag, value);
+	}
+	
+	private static void writeBoolean(DataOutput out, int tag, boolean value) throws IOException {
+		writeLong(out, tag, value ? 1 : 0);
+	}
+	
+	private static void writeLong(DataOutput out, int tag, long value) throws IOException {
+		out.writeByte(tag << TYPE_BITS | TYPE_VARINT);
+		// Zigzag, the small negative values are short too
+		long bits = (value << 1) ^ (value >> 63);
+		while ( (bits & ~0x7FL) != 0 ) {
+			out.writeByte((int) (bits & 0x7F) | 0x80);
+			bits >>>= 7;
+		}
+		out.writeByte((int) bits);
+	}
+	
+	private static long readVarint(DataInput in) throws IOException {
+		long bits = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			bits |= (long) (b & 0x7F) << shift;
+			if ( (b & 0x80) == 0 )
+				return (bits >>> 1) ^ -(bits & 1);
+		}
+		throw new CorruptConfigurationException("Malformed varint");
+	}
+	
+	private static void skip(DataInput in, int type) throws IOException {
+		if ( type != TYPE_BYTES )
+			throw new CorruptConfigurationException("Unknown field type " + type);
+		long length = readVarint(in);
+		if ( length < 0 || length > Integer.MAX_VALUE )
+			throw new CorruptConfigurationException("Malformed field length " + length);
+		// Not read into an array, a corrupt length would allocate it
+		int remaining = (int) length;
+		while ( remaining > 0 ) {
+			int skipped = in.skipBytes(remaining);
+			if ( skipped <= 0 ) {
+				// Throws at the end of the input
+				in.readByte();
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+	
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+/**
+ * Store of the configurations, one record for each change.
+ * <p>
+ * The file is a header and a log of records: type, id, length, CRC32 of the
+ * configuration and the configuration in {@link ConfigurationCodec} format. 
+ * A save only appends the records of the changed configurations. The index, 
+ * the position of the last record of each id, is built reading only the 
+ * record headers, and the configurations are read by id when they are needed,
+ * checking their CRC. When the replaced records are more than the live ones 
+ * the log is written again without them.
+ * <p>
+ * A record cut by a crash is dropped at the next open. A log of the first
+ * version, without CRC, is written again in the current one when opened.
+ * <p>
+ * The writes are one at a time. The reads do not wait for a write to reach 
+ * the storage nor for a compaction, only for the moments the file or the 
+ * index change.
+ */
+/* package */ class ConfigurationStore {
+	
+	//-------------------------------------------------------------------------
+	// Constants
+	private static final int	MAGIC				= 0x4148554C;	// "AHUL"
+	private static final int	VERSION				= 2;
+	private static final int	HEADER_SIZE			= 5;
+	private static final int	RECORD_HEADER_SIZE	= 17;
+	private static final int	V1_RECORD_HEADER_SIZE = 13;	// Without CRC
+	private static final int	COMPACT_MIN_RECORDS	= 64;
+	
+	/** Add or replace a configuration, it goes to the end of the order */
+	/* package */ static final int	TYPE_ADD			= 1;
+	/** Replace a configuration in its place */
+	/* package */ static final int	TYPE_UPDATE			= 2;
+	/** Remove a configuration */
+	/* package */ static final int	TYPE_REMOVE			= 3;
+	
+	/**
+	 * A change to append.
+	 */
+	/* package */ static class Record {
+		final int		type;
+		final long		id;
+		final byte[]	payload;
+		
+		Record(int type, long id, byte[] payload) {
+			this.type = type;
+			this.id = id;
+			this.payload = payload;
+		}
+	}
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final File				mFile;
+	private final Object			mWriteLock = new Object();	// Held by the writes, the reads go on
+	private RandomAccessFile		mAccess;	// Guarded by this, changed with mWriteLock too
+	// Position of the payload, length and CRC of the live record of each id, in order
+	private LinkedHashMap<Long, long[]> mIndex = new LinkedHashMap<Long, long[]>();	// Guarded by this
+	private int						mRecords;	// Guarded by this
+	
+	/**
+	 * @param file The log file.
+	 */
+	public ConfigurationStore(File file) {
+		mFile = file;
+	}
+	
+	/**
+	 * @return True if the log file exists.
+	 */
+	public boolean exists() {
+		return mFile.exists();
+	}
+	
+	/**
+	 * Open the log and build the index.
+	 * @throws IOException If the file is not a log, nothing is open then.
+	 */
+	public void open() throws IOException {
+		synchronized (mWriteLock) {
+			LinkedHashMap<Long, long[]> index = new LinkedHashMap<Long, long[]>();
+			int records = 0;
+			int version;
+			long size = mFile.length();
+			long end = HEADER_SIZE;
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+			try {
+				if ( in.readInt() != MAGIC )
+					throw new CorruptConfigurationException("Not a configuration log");
+				version = in.readUnsignedByte();
+				if ( version < 1 || version > VERSION )
+					throw new CorruptConfigurationException("Unknown configuration log version " + version);
+				int headerSize = version == 1 ? V1_RECORD_HEADER_SIZE : RECORD_HEADER_SIZE;
+				while ( true ) {
+					int type;
+					long id;
+					int length;
+					long crc = -1;
+					if ( end + headerSize > size )
+						break;
+					type = in.readUnsignedByte();
+					id = in.readLong();
+					length = in.readInt();
+					if ( version > 1 )
+						crc = in.readInt() & 0xFFFFFFFFL;
+					if ( length < 0 || end + headerSize + length > size )
+						break;
+					skipFully(in, length);
+					index(index, type, id, end + headerSize, length, crc);
+					records++;
+					end += headerSize + length;
+				}
+			} finally {
+				in.close();
+			}
+			RandomAccessFile access = new RandomAccessFile(mFile, "rw");
+			if ( access.length() > end ) {
+				// The last record was not written to the end
+				access.setLength(end);
+			}
+			install(access, index, records);
+			if ( version < VERSION ) {
+				try {
+					compact();
+				} catch (IOException e) {
+					// Still readable, without CRC, written again at the next compaction
+					Log.w(AHUD.TAG, "The configuration log can not be upgraded", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Create a new log with the given configurations, replacing the file.
+	 * @param configurations The configurations, in order.
+	 * @throws IOException
+	 */
+	public void create(Collection<AhudConfiguration> configurations) throws IOException {
+		synchronized (mWriteLock) {
+			File temp = new File(mFile.getPath() + ".tmp");
+			LinkedHashMap<Long, long[]> index = new LinkedHashMap<Long, long[]>();
+			RandomAccessFile out = new RandomAccessFile(temp, "rw");
+			try {
+				out.setLength(0);
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+				long end = HEADER_SIZE;
+				for (AhudConfiguration conf : configurations) {
+					Record record = add(conf);
+					long crc = crc(record.payload);
+					writeRecord(out, record, crc);
+					index(index, TYPE_ADD, record.id, end + RECORD_HEADER_SIZE, record.payload.length, crc);
+					end += RECORD_HEADER_SIZE + record.payload.length;
+				}
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			replace(temp, index);
+		}
+	}
+	
+	/**
+	 * Set aside the log, when it can not be opened, and create a new one with
+	 * the given configurations.
+	 * @param configurations The configurations, in order.
+	 * @throws IOException
+	 */
+	public void reset(Collection<AhudConfiguration> configurations) throws IOException {
+		synchronized (mWriteLock) {
+			close();
+			if ( mFile.exists() ) {
+				File bad = new File(mFile.getPath() + ".bad");
+				bad.delete();
+				if ( !mFile.renameTo(bad) )
+					mFile.delete();
+			}
+			create(configurations);
+		}
+	}
+	
+	/**
+	 * @return The ids of the configurations, in order.
+	 */
+	public synchronized long[] getIds() {
+		long[] ids = new long[mIndex.size()];
+		int i = 0;
+		for (Long id : mIndex.keySet()) {
+			ids[i++] = id;
+		}
+		return ids;
+	}
+	
+	/**
+	 * Read one configuration.
+	 * @param id The id.
+	 * @return The configuration, or null if there is not.
+	 * @throws IOException If it can not be read or its record is corrupt.
+	 */
+	public AhudConfiguration read(long id) throws IOException {
+		byte[] payload;
+		long crc;
+		synchronized (this) {
+			if ( mAccess == null )
+				throw new IOException("The store is not open");
+			long[] entry = mIndex.get(id);
+			if ( entry == null )
+				return null;
+			payload = new byte[(int) entry[1]];
+			crc = entry[2];
+			mAccess.seek(entry[0]);
+			mAccess.readFully(payload);
+		}
+		// Not checked if the log of the first version could not be written again
+		if ( crc != -1 && crc(payload) != crc )
+			throw new CorruptConfigurationException("Corrupt configuration record " + id);
+		return ConfigurationCodec.readConfiguration(new DataInputStream(new ByteArrayInputStream(payload)));
+	}
+	
+	/**
+	 * Append the records at the end of the log and wait until they are in the 
+	 * storage. The log is compacted if it has too many replaced records.
+	 * If they can not be written the log is left as it was. If the log could
+	 * not be opened before it is opened or created again.
+	 * @param records The records, in order.
+	 * @throws IOException
+	 */
+	public void append(List<Record> records) throws IOException {
+		synchronized (mWriteLock) {
+			if ( mAccess == null ) {
+				if ( mFile.exists() )
+					open();
+				else
+					create(Collections.<AhudConfiguration>emptyList());
+			}
+			if ( records.isEmpty() )
+				return;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			long[] crcs = new long[records.size()];
+			for (int i = 0; i < crcs.length; i++) {
+				Record record = records.get(i);
+				crcs[i] = crc(record.payload);
+				writeRecord(out, record, crcs[i]);
+			}
+			// Only the writes change the file, its length stays
+			RandomAccessFile access = mAccess;
+			long end = access.length();
+			try {
+				synchronized (this) {
+					access.seek(end);
+					access.write(bytes.toByteArray());
+				}
+				// Without the lock, the reads do not wait for the storage
+				access.getFD().sync();
+			} catch (IOException e) {
+				// Not a half record before the ones of the next try
+				synchronized (this) {
+					access.setLength(end);
+				}
+				throw e;
+			}
+			boolean isCompact;
+			synchronized (this) {
+				for (int i = 0; i < crcs.length; i++) {
+					Record record = records.get(i);
+					index(mIndex, record.type, record.id, end + RECORD_HEADER_SIZE, record.payload.length, crcs[i]);
+					end += RECORD_HEADER_SIZE + record.payload.length;
+				}
+				mRecords += crcs.length;
+				isCompact = mRecords > COMPACT_MIN_RECORDS && mRecords > 2 * mIndex.size();
+			}
+			if ( isCompact ) {
+				try {
+					compact();
+				} catch (IOException e) {
+					// The records are written, the log is only longer
+					Log.w(AHUD.TAG, "The configuration log can not be compacted", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Close the file.
+	 */
+	public void close() {
+		synchronized (mWriteLock) {
+			install(null, new LinkedHashMap<Long, long[]>(), 0);
+		}
+	}
+	
+	/**
+	 * Write again the log with only the live records, copied as they are with
+	 * their CRC. The reads go on from the old log until it is replaced. 
+	 * Called with mWriteLock.
+	 */
+	private void compact() throws IOException {
+		LinkedHashMap<Long, long[]> live;
+		FileChannel source;
+		synchronized (this) {
+			AHUD.debug("Compact configurations: " + mIndex.size() + " of " + mRecords + " records");
+			live = new LinkedHashMap<Long, long[]>(mIndex);
+			source = mAccess.getChannel();
+		}
+		File temp = new File(mFile.getPath() + ".tmp");
+		LinkedHashMap<Long, long[]> index = new LinkedHashMap<Long, long[]>();
+		RandomAccessFile out = new RandomAccessFile(temp, "rw");
+		try {
+			out.setLength(0);
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			long end = HEADER_SIZE;
+			byte[] payload = new byte[0];
+			for (Map.Entry<Long, long[]> entry : live.entrySet()) {
+				long[] position = entry.getValue();
+				int length = (int) position[1];
+				if ( payload.length < length )
+					payload = new byte[length];
+				// Positional, it does not move the file pointer of the reads
+				ByteBuffer buffer = ByteBuffer.wrap(payload, 0, length);
+				while ( buffer.hasRemaining() ) {
+					if ( source.read(buffer, position[0] + buffer.position()) < 0 )
+						throw new EOFException();
+				}
+				// The first version has no CRC, it is the one of the payload
+				long crc = position[2] == -1 ? crc(payload, length) : position[2];
+				out.writeByte(TYPE_ADD);
+				out.writeLong(entry.getKey());
+				out.writeInt(length);
+				out.writeInt((int) crc);
+				out.write(payload, 0, length);
+				index(index, TYPE_ADD, entry.getKey(), end + RECORD_HEADER_SIZE, length, crc);
+				end += RECORD_HEADER_SIZE + length;
+			}
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		replace(temp, index);
+	}
+	
+	/**
+	 * Replace the log with a new one. Called with mWriteLock.
+	 * @param temp The new log.
+	 * @param index Its index.
+	 */
+	private void replace(File temp, LinkedHashMap<Long, long[]> index) throws IOException {
+		synchronized (this) {
+			if ( !temp.renameTo(mFile) ) {
+				temp.delete();
+				throw new IOException("Can not rename " + temp);
+			}
+			RandomAccessFile access = null;
+			try {
+				access = new RandomAccessFile(mFile, "rw");
+			} finally {
+				// Closed even if the new one can not be opened, the next append opens it
+				install(access, index, index.size());
+			}
+		}
+	}
+	
+	/**
+	 * Set the file and its index, closing the old file.
+	 */
+	private synchronized void install(RandomAccessFile access, LinkedHashMap<Long, long[]> index, int records) {
+		try {
+			if ( mAccess != null )
+				mAccess.close();
+		} catch (IOException e) {
+			Log.w(AHUD.TAG, "The configuration log can not be closed", e);
+		}
+		mAccess = access;
+		mIndex = access == null ? new LinkedHashMap<Long, long[]>() : index;
+		mRecords = access == null ? 0 : records;
+	}
+	
+	private static void skipFully(DataInputStream in, int length) throws IOException {
+		while ( length > 0 ) {
+			int skipped = in.skipBytes(length);
+			if ( skipped <= 0 )
+				throw new EOFException();
+			length -= skipped;
+		}
+	}
+	
+	private static void index(Map<Long, long[]> index, int type, long id, long position, int length, long crc) {
+		switch (type) {
+		case TYPE_ADD:
+			index.remove(id);
+			index.put(id, new long[] { position, length, crc });
+			break;
+			
+		case TYPE_UPDATE:
+			index.put(id, new long[] { position, length, crc });
+			break;
+			
+		case TYPE_REMOVE:
+			index.remove(id);
+			break;
+		}
+	}
+	
+	private static void writeRecord(DataOutput out, Record record, long crc) throws IOException {
+		out.writeByte(record.type);
+		out.writeLong(record.id);
+		out.writeInt(record.payload.length);
+		out.writeInt((int) crc);
+		out.write(record.payload);
+	}
+	
+	private static long crc(byte[] payload) {
+		return crc(payload, payload.length);
+	}
+	
+	private static long crc(byte[] payload, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, length);
+		return crc.getValue();
+	}
+	
+	/**
+	 * @return The record to add a configuration.
+	 */
+	/* package */ static Record add(AhudConfiguration conf) throws IOException {
+		return new Record(TYPE_ADD, conf.getId(), encode(conf));
+	}
+	
+	/**
+	 * @return The record to replace a configuration in its place.
+	 */
+	/* package */ static Record update(AhudConfiguration conf) throws IOException {
+		return new Record(TYPE_UPDATE, conf.getId(), encode(conf));
+	}
+	
+	/**
+	 * @return The record to remove a configuration.
+	 */
+	/* package */ static Record remove(long id) {
+		return new Record(TYPE_REMOVE, id, new byte[0]);
+	}
+	
+	private static byte[] encode(AhudConfiguration conf) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		ConfigurationCodec.writeConfiguration(out, conf);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+}
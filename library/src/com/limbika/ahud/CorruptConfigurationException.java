@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+
+package com.limbika.ahud;
+
+import java.io.IOException;
+
+/**
+ * The stored configurations are not in a known format or fail their check.
+ * Unlike the other {@link IOException}, reading them again does not help.
+ */
+/* package */ class CorruptConfigurationException extends IOException {
+
+	private static final long serialVersionUID = 2890477416342717052L;
+
+	public CorruptConfigurationException(String message) {
+		super(message);
+	}
+	
+}
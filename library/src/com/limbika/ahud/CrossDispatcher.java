@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.util.Log;
+
+import com.limbika.ahud.AhudServiceConnection.OnCrossListener;
+
+/**
+ * Deliver the crosses to a listener in an {@link Executor}, so the listener
+ * does not stop the HUD.
+ * <p>
+ * The crosses wait in a bounded queue and are delivered in order, one at a 
+ * time, by one task of the executor while the queue is not empty. When the 
+ * queue is full the oldest cross is dropped: the listener always gets the last
+ * crosses and the HUD never waits for it. The HUD does not see the result of 
+ * the listener, it always injects the click. The drops are logged once until 
+ * the listener empties the queue, and counted in the {@link AhudMetrics}.
+ */
+/* package */ class CrossDispatcher implements OnCrossListener {
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final OnCrossListener	mListener;
+	private final Executor			mExecutor;
+	private final long[]			mQueue;			// x in the high half, y in the low half
+	private int						mHead;			// Guarded by this
+	private int						mCount;			// Guarded by this
+	private boolean					mIsScheduled;	// Guarded by this, a drain is in the executor
+	private boolean					mIsDropping;	// Guarded by this, logged until the queue is empty
+	private volatile AhudMetrics	mMetrics;
+	
+	/**
+	 * @param listener The listener to call from the executor.
+	 * @param executor The executor of the listener.
+	 * @param capacity The number of crosses that can wait for the listener.
+	 */
+	public CrossDispatcher(OnCrossListener listener, Executor executor, int capacity) {
+		if ( capacity <= 0 )
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		mListener = listener;
+		mExecutor = executor;
+		mQueue = new long[capacity];
+	}
+	
+	/**
+	 * @param metrics The metrics to count the dropped crosses, null for none.
+	 */
+	/* package */ void setMetrics(AhudMetrics metrics) {
+		mMetrics = metrics;
+	}
+	
+	/**
+	 * Queue the cross for the listener, never blocks.
+	 * @return Always false, the HUD injects the click.
+	 */
+	@Override
+	public boolean onCross(int x, int y) {
+		boolean isSchedule;
+		boolean isDropped = false;
+		boolean isFirstDrop = false;
+		synchronized (this) {
+			if ( mCount == mQueue.length ) {
+				mHead = (mHead + 1) % mQueue.length;
+				mCount--;
+				isDropped = true;
+				isFirstDrop = !mIsDropping;
+				mIsDropping = true;
+			}
+			mQueue[(mHead + mCount) % mQueue.length] = ((long) x << 32) | (y & 0xFFFFFFFFL);
+			mCount++;
+			isSchedule = !mIsScheduled;
+			mIsScheduled = true;
+		}
+		if ( isDropped ) {
+			AhudMetrics metrics = mMetrics;
+			if ( metrics != null )
+				metrics.recordDroppedCross();
+			if ( isFirstDrop )
+				Log.w(AHUD.TAG, "Cross listener is late, the oldest crosses are dropped");
+		}
+		if ( isSchedule ) {
+			try {
+				mExecutor.execute(mDrain);
+			} catch (RejectedExecutionException e) {
+				// The crosses stay in the queue, the next one tries again
+				synchronized (this) {
+					mIsScheduled = false;
+				}
+				Log.w(AHUD.TAG, "Cross listener executor rejected the delivery", e);
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Deliver the queued crosses until the queue is empty.
+	 */
+	private final Runnable mDrain = new Runnable() {
+		@Override
+		public void run() {
+			boolean isEmpty = false;
+			try {
+				while ( true ) {
+					long cross;
+					synchronized (CrossDispatcher.this) {
+						if ( mCount == 0 ) {
+							mIsScheduled = false;
+							mIsDropping = false;
+							isEmpty = true;
+							return;
+						}
+						cross = mQueue[mHead];
+						mHead = (mHead + 1) % mQueue.length;
+						mCount--;
+					}
+					mListener.onCross((int) (cross >> 32), (int) cross);
+				}
+			} finally {
+				if ( !isEmpty ) {
+					// The listener threw, the next cross schedules a new drain
+					synchronized (CrossDispatcher.this) {
+						mIsScheduled = false;
+					}
+				}
+			}
+		}
+	};
+	
+}
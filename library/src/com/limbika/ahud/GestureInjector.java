@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.util.ArrayList;
+
+import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityService.GestureResultCallback;
+import android.accessibilityservice.GestureDescription;
+import android.accessibilityservice.GestureDescription.StrokeDescription;
+import android.graphics.Path;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Inject the gestures with an {@link AccessibilityService}.
+ * <p>
+ * The gestures reach every window and nothing is blocked: the system 
+ * dispatches them and the end is reported from the completion callbacks, 
+ * in the thread of the target handler.
+ * The service must declare <code>android:canPerformGestures</code>.
+ * Only from {@link android.os.Build.VERSION_CODES#N}.
+ */
+/* package */ class GestureInjector implements Injector {
+	
+	/**
+	 * A dispatched gesture, reported once.
+	 */
+	private class Pending extends GestureResultCallback {
+		final long	requestTime		= SystemClock.uptimeMillis();
+		boolean		isReported;
+		
+		@Override
+		public void onCompleted(GestureDescription gestureDescription) {
+			finish(this, RESULT_COMPLETED);
+		}
+		
+		@Override
+		public void onCancelled(GestureDescription gestureDescription) {
+			finish(this, RESULT_CANCELLED);
+		}
+	}
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final AccessibilityService	mService;
+	private final Handler				mTarget;
+	private final int					mWhat;
+	// Only used from the thread of the target
+	private final ArrayList<Pending>	mPending		= new ArrayList<Pending>();
+	
+	/**
+	 * @param service The accessibility service to dispatch the gestures.
+	 * @param target The handler to notify the end of each injection, with the
+	 * latency in milliseconds in <code>arg1</code>.
+	 * @param what The message code for the target.
+	 */
+	public GestureInjector(AccessibilityService service, Handler target, int what) {
+		mService = service;
+		mTarget = target;
+		mWhat = what;
+	}
+	
+	@Override
+	public void inject(int gesture, float x, float y, float toX, float toY) {
+		Log.i(AHUD.TAG, "Dispatch gesture " + gesture + " in: (" + x + ", " + y + ")");
+		AHUD.beginSection("AHUD:inject");
+		Path path = new Path();
+		path.moveTo(x, y);
+		GestureDescription.Builder builder = new GestureDescription.Builder();
+		switch (gesture) {
+		case AhudConfiguration.GESTURE_DOUBLE_TAP:
+			builder.addStroke(new StrokeDescription(path, 0, TAP_DURATION));
+			builder.addStroke(new StrokeDescription(path, TAP_DURATION + DOUBLE_TAP_DELAY, TAP_DURATION));
+			break;
+			
+		case AhudConfiguration.GESTURE_LONG_PRESS:
+			builder.addStroke(new StrokeDescription(path, 0, LONG_PRESS_DURATION));
+			break;
+			
+		case AhudConfiguration.GESTURE_SWIPE:
+			path.lineTo(toX, toY);
+			builder.addStroke(new StrokeDescription(path, 0, SWIPE_DURATION));
+			break;
+			
+		default:
+			builder.addStroke(new StrokeDescription(path, 0, TAP_DURATION));
+			break;
+		}
+		GestureDescription description = builder.build();
+		
+		Pending pending = new Pending();
+		mPending.add(pending);
+		if ( !mService.dispatchGesture(description, pending, mTarget) ) {
+			Log.w(AHUD.TAG, "The gesture was not dispatched");
+			finish(pending, RESULT_CANCELLED);
+		}
+		AHUD.endSection();
+	}
+	
+	/**
+	 * Report the gestures in flight as cancelled, their callbacks are ignored.
+	 */
+	@Override
+	public void quit() {
+		while ( !mPending.isEmpty() )
+			finish(mPending.get(0), RESULT_CANCELLED);
+	}
+	
+	/**
+	 * Notify the end of one gesture, in the thread of the target.
+	 */
+	private void finish(Pending pending, int result) {
+		if ( pending.isReported )
+			return;
+		pending.isReported = true;
+		mPending.remove(pending);
+		int latency = (int) (SystemClock.uptimeMillis() - pending.requestTime);
+		AHUD.debug("Gesture " + (result == RESULT_COMPLETED ? "completed" : "cancelled") + " in " + latency + " ms");
+		mTarget.obtainMessage(mWhat, latency, result).sendToTarget();
+	}
+	
+}
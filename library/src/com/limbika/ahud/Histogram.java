@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in microseconds, with a fixed number of buckets.
+ * <p>
+ * Each power of two is split in four buckets, so a value is known within 
+ * 25% up to about half a minute; longer values go to the last bucket.
+ * Recording does not allocate nor lock, the values are added with atomic 
+ * operations from any thread. The histograms of {@link AhudMetrics} are
+ * snapshots, they do not change.
+ */
+public final class Histogram {
+	
+	//-------------------------------------------------------------------------
+	// Constants
+	private static final int	SUB_BITS		= 2;
+	private static final int	SUB_COUNT		= 1 << SUB_BITS;
+	private static final int	MAX_EXPONENT	= 24;		// 2^25 us, 33 s
+	/** Number of buckets */
+	public static final int		BUCKET_COUNT	= (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final AtomicLongArray mCounts	= new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong	mCount		= new AtomicLong();
+	private final AtomicLong	mSum		= new AtomicLong();
+	private final AtomicLong	mMin		= new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong	mMax		= new AtomicLong();
+	
+	/* package */ Histogram() {}
+	
+	/**
+	 * Add one value.
+	 * @param micros The duration in microseconds, negative values count as 0.
+	 */
+	/* package */ void record(long micros) {
+		long value = Math.max(0, micros);
+		mCounts.incrementAndGet(getBucket(value));
+		mCount.incrementAndGet();
+		mSum.addAndGet(value);
+		long min;
+		while ( value < (min = mMin.get()) && !mMin.compareAndSet(min, value) ) {
+			// Other thread recorded a value, compare again
+		}
+		long max;
+		while ( value > (max = mMax.get()) && !mMax.compareAndSet(max, value) ) {
+			// Other thread recorded a value, compare again
+		}
+	}
+	
+	/**
+	 * Add one value.
+	 * @param nanos The duration in nanoseconds.
+	 */
+	/* package */ void recordNanos(long nanos) {
+		record(nanos / 1000);
+	}
+	
+	/**
+	 * Replace the values with the values of other histogram. It can be 
+	 * recording meanwhile: the count is the one of the copied buckets, the sum,
+	 * minimum and maximum can include a value more or less.
+	 * @param histogram The histogram to copy.
+	 */
+	/* package */ void copyFrom(Histogram histogram) {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			long bucket = histogram.mCounts.get(i);
+			mCounts.set(i, bucket);
+			count += bucket;
+		}
+		mCount.set(count);
+		mSum.set(histogram.mSum.get());
+		mMin.set(histogram.mMin.get());
+		mMax.set(histogram.mMax.get());
+	}
+	
+	/**
+	 * @return The number of values.
+	 */
+	public long getCount() {
+		return mCount.get();
+	}
+	
+	/**
+	 * @return The minimum value in microseconds, 0 if empty.
+	 */
+	public long getMin() {
+		return mCount.get() == 0 ? 0 : mMin.get();
+	}
+	
+	/**
+	 * @return The maximum value in microseconds.
+	 */
+	public long getMax() {
+		return mMax.get();
+	}
+	
+	/**
+	 * @return The mean value in microseconds, 0 if empty.
+	 */
+	public long getMean() {
+		long count = mCount.get();
+		return count == 0 ? 0 : mSum.get() / count;
+	}
+	
+	/**
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The upper bound in microseconds of the bucket with the percentile, 
+	 * not above the maximum; 0 if empty.
+	 */
+	public long getPercentile(double percentile) {
+		long count = mCount.get();
+		long max = mMax.get();
+		if ( count == 0 )
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100 * count);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += mCounts.get(i);
+			if ( seen >= rank && seen > 0 )
+				return Math.min(getBucketUpperBound(i), max);
+		}
+		return max;
+	}
+	
+	/**
+	 * @param bucket The bucket, from 0 to {@link #BUCKET_COUNT} - 1.
+	 * @return The number of values in the bucket.
+	 */
+	public long getBucketCount(int bucket) {
+		return mCounts.get(bucket);
+	}
+	
+	/**
+	 * @param bucket The bucket, from 0 to {@link #BUCKET_COUNT} - 1.
+	 * @return The lowest value of the bucket in microseconds.
+	 */
+	public static long getBucketLowerBound(int bucket) {
+		if ( bucket < SUB_COUNT )
+			return bucket;
+		int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+		int sub = bucket % SUB_COUNT;
+		return (long) (SUB_COUNT + sub) << (exponent - SUB_BITS);
+	}
+	
+	/**
+	 * @param bucket The bucket, from 0 to {@link #BUCKET_COUNT} - 1.
+	 * @return The value in microseconds above the values of the bucket, 
+	 * {@link Long#MAX_VALUE} for the last one.
+	 */
+	public static long getBucketUpperBound(int bucket) {
+		return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : getBucketLowerBound(bucket + 1);
+	}
+	
+	private static int getBucket(long value) {
+		if ( value < SUB_COUNT )
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if ( exponent > MAX_EXPONENT )
+			return BUCKET_COUNT - 1;
+		int sub = (int) (value >> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	@Override
+	public String toString() {
+		return "Histogram [count=" + getCount() + ", min=" + getMin() + ", mean=" + getMean()
+				+ ", p50=" + getPercentile(50) + ", p90=" + getPercentile(90)
+				+ ", p99=" + getPercentile(99) + ", max=" + getMax() + "]";
+	}
+	
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import android.os.Handler;
+import android.view.ViewConfiguration;
+
+/**
+ * Inject the click events of the crosses.
+ * <p>
+ * Each gesture is injected at once, with all its points. The injection is
+ * asynchronous. The end of each one is sent to the target {@link Handler}
+ * given to the implementation, with the latency in milliseconds in 
+ * <code>arg1</code> and the result in <code>arg2</code>.
+ */
+/* package */ interface Injector {
+
+	/**
+	 * The click was delivered.
+	 */
+	public static final int RESULT_COMPLETED	= 1;
+	
+	/**
+	 * The click was not delivered, cancelled by the system or not dispatched.
+	 */
+	public static final int RESULT_CANCELLED	= 0;
+	
+	/**
+	 * Time the finger is down in a tap, in milliseconds.
+	 */
+	public static final long TAP_DURATION		= 50;
+	
+	/**
+	 * Time from the up of the first tap to the down of the second one in 
+	 * a double tap, in milliseconds. Between the minimum and 
+	 * {@link ViewConfiguration#getDoubleTapTimeout()}.
+	 */
+	public static final long DOUBLE_TAP_DELAY	= 100;
+	
+	/**
+	 * Time the finger is down in a long press, in milliseconds.
+	 */
+	public static final long LONG_PRESS_DURATION = ViewConfiguration.getLongPressTimeout() + 100;
+	
+	/**
+	 * Time of the move of a swipe, in milliseconds.
+	 */
+	public static final long SWIPE_DURATION		= 300;
+	
+	/**
+	 * Points of the move of a swipe, delivered in one batch.
+	 */
+	public static final int SWIPE_SAMPLES		= 10;
+
+	/**
+	 * Queue a gesture.
+	 * @param gesture The gesture, one of the <code>GESTURE_*</code> of {@link AhudConfiguration}.
+	 * @param x The abscissa coordinate.
+	 * @param y The ordinate coordinate.
+	 * @param toX The abscissa where a swipe ends.
+	 * @param toY The ordinate where a swipe ends.
+	 */
+	public void inject(int gesture, float x, float y, float toX, float toY);
+	
+	/**
+	 * Stop the injector. The clicks not finished yet are not injected, or 
+	 * they are stopped, and each one is reported as {@link #RESULT_CANCELLED}.
+	 */
+	public void quit();
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014 Limbika Assistive Technologies
+ *
+ * This library is dual-licensed: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as 
+ * published by the Free Software Foundation. For the terms of this 
+ * license, see licenses at
+ * 
+ * 		http://www.gnu.org/licenses/gpl-2.0.html
+ *
+ * You are free to use this library under the terms of the GNU General
+ * Public License, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * Alternatively, you can license this library under a commercial
+ * license, as set out in LICENSE.txt.
+ */
+
+package com.limbika.ahud;
+
+import java.util.ArrayDeque;
+
+import android.app.Instrumentation;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+
+/**
+ * Inject the click events with {@link Instrumentation} from one long-lived thread.
+ * <p>
+ * The clicks are injected in the order they are requested, one at a time: a 
+ * gesture waits until the one before is finished. Each one reports its 
+ * latency, from the request to the end of the injection.
+ * It only reaches the windows of the own application, unless it has the
+ * <code>INJECT_EVENTS</code> permission.
+ */
+/* package */ class InstrumentationInjector implements Injector {
+	
+	/**
+	 * A gesture in progress.
+	 */
+	private static class Pending {
+		int		gesture;
+		float	x, y, toX, toY;
+		long	requestTime;
+		long	downTime;
+		boolean	isDown;
+	}
+	
+	//-------------------------------------------------------------------------
+	// Messages
+	private static final int	MSG_INJECT			= 1;
+	private static final int	MSG_UP				= 2;
+	private static final int	MSG_SECOND_TAP		= 3;
+	private static final int	MSG_QUIT			= 4;
+	
+	//-------------------------------------------------------------------------
+	// Members
+	private final HandlerThread		mThread;
+	private final Handler			mHandler;
+	private final Handler			mTarget;
+	private final int				mWhat;
+	private final Instrumentation	mInstrumentation 	= new Instrumentation();
+	// Only used from the injection thread
+	private final ArrayDeque<Pending>	mQueue			= new ArrayDeque<Pending>();
+	private Pending					mCurrent;
+	
+	/**
+	 * Start the injection thread.
+	 * @param target The handler to notify the end of each injection, with the
+	 * latency in milliseconds in <code>arg1</code>.
+	 * @param what The message code for the target.
+	 */
+	public InstrumentationInjector(Handler target, int what) {
+		mTarget = target;
+		mWhat = what;
+		mThread = new HandlerThread("AhudInjector", Process.THREAD_PRIORITY_FOREGROUND);
+		mThread.start();
+		mHandler = new Handler(mThread.getLooper()) {
+			@Override
+			public void handleMessage(Message msg) {
+				Pending pending = (Pending) msg.obj;
+				AHUD.beginSection("AHUD:inject");
+				switch (msg.what) {
+				case MSG_INJECT:
+					mQueue.add(pending);
+					if ( mCurrent == null )
+						next();
+					break;
+					
+				case MSG_UP:
+					up(pending);
+					break;
+					
+				case MSG_SECOND_TAP:
+					secondTap(pending);
+					break;
+					
+				case MSG_QUIT:
+					cancelAll();
+					break;
+				}
+				AHUD.endSection();
+			}
+		};
+	}
+	
+	@Override
+	public void inject(int gesture, float x, float y, float toX, float toY) {
+		Pending pending = new Pending();
+		pending.gesture = gesture;
+		pending.x = x;
+		pending.y = y;
+		pending.toX = toX;
+		pending.toY = toY;
+		pending.requestTime = SystemClock.uptimeMillis();
+		mHandler.obtainMessage(MSG_INJECT, pending).sendToTarget();
+	}
+	
+	/**
+	 * Stop after the gestures already requested are reported as cancelled.
+	 */
+	@Override
+	public void quit() {
+		mHandler.sendEmptyMessage(MSG_QUIT);
+	}
+	
+	/**
+	 * Lift the finger of the current gesture, report it and the queued ones 
+	 * as cancelled and stop the thread.
+	 */
+	private void cancelAll() {
+		mHandler.removeCallbacksAndMessages(null);
+		if ( mCurrent != null && mCurrent.isDown )
+			send(mCurrent.downTime, SystemClock.uptimeMillis(), MotionEvent.ACTION_CANCEL, mCurrent.x, mCurrent.y);
+		if ( mCurrent != null )
+			mQueue.addFirst(mCurrent);
+		mCurrent = null;
+		for (Pending pending : mQueue)
+			report(pending, RESULT_CANCELLED);
+		mQueue.clear();
+		mThread.quit();
+	}
+	
+	/**
+	 * Start the next queued gesture, if any.
+	 */
+	private void next() {
+		mCurrent = mQueue.poll();
+		if ( mCurrent != null )
+			down(mCurrent);
+	}
+	
+	/**
+	 * Put the finger down. The thread is not blocked while it is down, 
+	 * the rest of the gesture is a delayed message.
+	 */
+	private void down(Pending pending) {
+		Log.i(AHUD.TAG, "Generate gesture " + pending.gesture + " in: (" + pending.x + ", " + pending.y + ")");
+		pending.downTime = SystemClock.uptimeMillis();
+		pending.isDown = true;
+		send(pending.downTime, pending.downTime, MotionEvent.ACTION_DOWN, pending.x, pending.y);
+		switch (pending.gesture) {
+		case AhudConfiguration.GESTURE_LONG_PRESS:
+			mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_UP, pending), LONG_PRESS_DURATION);
+			break;
+			
+		case AhudConfiguration.GESTURE_SWIPE:
+			mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_UP, pending), SWIPE_DURATION);
+			break;
+			
+		default:
+			mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_UP, pending), TAP_DURATION);
+			break;
+		}
+	}
+	
+	/**
+	 * Lift the finger. A swipe first delivers all the points of the move 
+	 * in one event, as historical samples.
+	 */
+	private void up(Pending pending) {
+		long now = SystemClock.uptimeMillis();
+		if ( pending.gesture == AhudConfiguration.GESTURE_SWIPE ) {
+			MotionEvent move = null;
+			for (int i = 1; i <= SWIPE_SAMPLES; i++) {
+				float t = (float) i / SWIPE_SAMPLES;
+				long time = pending.downTime + (long) (t * (now - pending.downTime));
+				float x = pending.x + t * (pending.toX - pending.x);
+				float y = pending.y + t * (pending.toY - pending.y);
+				if ( move == null )
+					move = MotionEvent.obtain(pending.downTime, time, MotionEvent.ACTION_MOVE, x, y, 0);
+				else
+					move.addBatch(time, x, y, 1F, 1F, 0);
+			}
+			mInstrumentation.sendPointerSync(move);
+			move.recycle();
+			send(pending.downTime, now, MotionEvent.ACTION_UP, pending.toX, pending.toY);
+		}
+		else {
+			send(pending.downTime, now, MotionEvent.ACTION_UP, pending.x, pending.y);
+		}
+		pending.isDown = false;
+		
+		if ( pending.gesture == AhudConfiguration.GESTURE_DOUBLE_TAP ) {
+			pending.gesture = AhudConfiguration.GESTURE_TAP;
+			mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_SECOND_TAP, pending), DOUBLE_TAP_DELAY);
+		}
+		else {
+			finish(pending);
+		}
+	}
+	
+	private void secondTap(Pending pending) {
+		pending.downTime = SystemClock.uptimeMillis();
+		pending.isDown = true;
+		send(pending.downTime, pending.downTime, MotionEvent.ACTION_DOWN, pending.x, pending.y);
+		mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_UP, pending), TAP_DURATION);
+	}
+	
+	private void send(long downTime, long eventTime, int action, float x, float y) {
+		MotionEvent event = MotionEvent.obtain(downTime, eventTime, action, x, y, 0);
+		mInstrumentation.sendPointerSync(event);
+		event.recycle();
+	}
+	
+	private void finish(Pending pending) {
+		report(pending, RESULT_COMPLETED);
+		next();
+	}
+	
+	private void report(Pending pending, int result) {
+		int latency = (int) (SystemClock.uptimeMillis() - pending.requestTime);
+		AHUD.debug("Gesture " + (result == RESULT_COMPLETED ? "injected" : "cancelled") + " in " + latency + " ms");
+		mTarget.obtainMessage(mWhat, latency, result).sendToTarget();
+	}
+	
+}
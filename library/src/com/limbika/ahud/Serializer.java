@@ -32,6 +32,9 @@ import android.util.Base64OutputStream;
 
 /**
  * Serialize serializable objects into string.
+ * <p>
+ * Format of the configurations of the old versions, read once to move them 
+ * to {@link ConfigurationCodec}.
  */
 /* package */ class Serializer {
     